@@ -0,0 +1,68 @@
+package com.anthonymandra.framework;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Util} copy paths across buffer and payload sizes.  Output is discarded so only the copy
+ * itself is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CopyBenchmark
+{
+	@Param({"4096", "1048576", "16777216"})
+	public int payloadSize;
+
+	@Param({"8192", "65536", "262144"})
+	public int bufferSize;
+
+	private byte[] payload;
+	private final OutputStream sink = OutputStream.nullOutputStream();
+
+	@Setup
+	public void setup()
+	{
+		payload = new byte[payloadSize];
+		new Random(0).nextBytes(payload);
+		Util.setCopyBufferSize(bufferSize);
+	}
+
+	@Benchmark
+	public long copyLarge() throws IOException
+	{
+		return Util.copyLarge(new ByteArrayInputStream(payload), sink);
+	}
+
+	@Benchmark
+	public long copyLargeChannels() throws IOException
+	{
+		return Util.copyLarge(Channels.newChannel(new ByteArrayInputStream(payload)), Channels.newChannel(sink));
+	}
+
+	@Benchmark
+	public byte[] toByteArray() throws IOException
+	{
+		return Util.toByteArray(new ByteArrayInputStream(payload));
+	}
+
+	@Benchmark
+	public byte[] toByteArraySizeHint() throws IOException
+	{
+		return Util.toByteArray(new ByteArrayInputStream(payload), payload.length);
+	}
+}
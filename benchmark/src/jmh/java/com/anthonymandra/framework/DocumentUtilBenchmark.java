@@ -0,0 +1,97 @@
+package com.anthonymandra.framework;
+
+import android.net.Uri;
+import android.provider.DocumentsContract;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Document id and uri parsing.  {@link Uri} caches its parsed segments, so the uri based suites
+ * parse a fresh uri on each invocation; {@link #parseUri()} is that baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DocumentUtilBenchmark
+{
+	private static final String AUTHORITY = "com.android.externalstorage.documents";
+
+	@Param({"primary:", "primary:DCIM", "primary:DCIM/Camera/IMG_20240101_120000.jpg",
+			"0000-0000:a/b/c/d/e/f/g/h/i/j/IMG_0001.dng"})
+	public String documentId;
+
+	private String documentUri;
+
+	@Setup
+	public void setup()
+	{
+		Uri tree = DocumentsContract.buildTreeDocumentUri(AUTHORITY, documentId);
+		documentUri = DocumentsContract.buildDocumentUriUsingTree(tree, documentId).toString();
+	}
+
+	@Benchmark
+	public Uri parseUri()
+	{
+		return Uri.parse(documentUri);
+	}
+
+	@Benchmark
+	public String getRoot()
+	{
+		return DocumentUtil.getRoot(documentId);
+	}
+
+	@Benchmark
+	public String[] getPathSegments()
+	{
+		return DocumentUtil.getPathSegments(documentId);
+	}
+
+	@Benchmark
+	public String getParentDocumentId()
+	{
+		return DocumentUtil.getParentDocumentId(documentId);
+	}
+
+	@Benchmark
+	public String getDocumentId()
+	{
+		return DocumentUtil.getDocumentId(Uri.parse(documentUri));
+	}
+
+	@Benchmark
+	public Uri getChildUri()
+	{
+		return DocumentUtil.getChildUri(Uri.parse(documentUri), "IMG_0002.jpg");
+	}
+
+	@Benchmark
+	public Uri getNeighborUri()
+	{
+		return DocumentUtil.getNeighborUri(Uri.parse(documentUri), "IMG_0002.jpg");
+	}
+
+	/**
+	 * Framework equivalent of {@link TreeUriFactory#buildDocumentUri(String)} for comparison
+	 */
+	@Benchmark
+	public Uri buildDocumentUriUsingTree()
+	{
+		return DocumentsContract.buildDocumentUriUsingTree(Uri.parse(documentUri), documentId);
+	}
+
+	@Benchmark
+	public Uri treeUriFactory()
+	{
+		return TreeUriFactory.forTree(Uri.parse(documentUri)).buildDocumentUri(documentId);
+	}
+}
@@ -0,0 +1,175 @@
+package com.anthonymandra.framework
+
+import android.database.Cursor
+import android.database.MatrixCursor
+import android.net.Uri
+import android.provider.DocumentsContract
+import com.anthonymandra.support.v4.provider.DocumentsContractApi21
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.infra.Blackhole
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.TimeUnit
+
+/**
+ * Listing overhead on our side of the binder.  Document listings are served by a
+ * [MatrixCursor] standing in for the provider, [cursorBaseline] is the cost of the stand-in
+ * alone.  [listDocuments] and [queryEachDocument] reach the stand-in through
+ * [ProviderInstrumentation] by way of a [StandInTransport], as they would a provider.  File
+ * listings run against a temporary directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class ListingBenchmark {
+	@Param("100", "10000")
+	var children = 0
+
+	/**
+	 * Only for the benchmarks that list with or without metadata
+	 */
+	@State(Scope.Benchmark)
+	open class Metadata {
+		@Param("false", "true")
+		var withMetadata = false
+	}
+
+	private val context = StandInContext()
+	private val transport = StandInTransport { uri, projection ->
+		if (uri.lastPathSegment == PATH_CHILDREN) cursor(projection) else documentCursor(DocumentsContract.getDocumentId(uri))
+	}
+	private lateinit var parent: UsefulDocumentFile
+	private lateinit var rows: Array<Array<Any>>
+	private lateinit var rowsById: Map<String, Array<Any>>
+	private lateinit var childUris: Array<Uri>
+	private lateinit var directory: UsefulDocumentFile
+	private lateinit var directoryFile: File
+
+	@Setup(Level.Trial)
+	fun setup() {
+		parent = UsefulDocumentFile.fromUri(context, DocumentsContract.buildTreeDocumentUri(AUTHORITY, PARENT_ID))
+		rows = Array(children) { i ->
+			arrayOf("$PARENT_ID/IMG_$i.jpg", "image/jpeg", MODIFIED + i, SIZE + i, FLAGS, "IMG_$i.jpg")
+		}
+		rowsById = rows.associateBy { it[0] as String }
+		childUris = Array(children) { DocumentsContract.buildDocumentUriUsingTree(parent.uri, rows[it][0] as String) }
+
+		directoryFile = Files.createTempDirectory("listing").toFile()
+		for (i in 0 until children)
+			File(directoryFile, "IMG_$i.jpg").createNewFile()
+		directory = UsefulDocumentFile.fromUri(context, Uri.fromFile(directoryFile))
+		transport.install()
+	}
+
+	@TearDown(Level.Trial)
+	fun tearDown() {
+		transport.close()
+		directoryFile.deleteRecursively()
+	}
+
+	/**
+	 * The children of [parent], with the columns of `projection` as a provider returns them
+	 */
+	private fun cursor(projection: Array<String>? = null): Cursor {
+		if (projection == null || projection.contentEquals(UsefulDocumentFile.METADATA_COLUMNS)) {
+			val cursor = MatrixCursor(UsefulDocumentFile.METADATA_COLUMNS, children)
+			for (row in rows)
+				cursor.addRow(row)
+			return cursor
+		}
+		val columns = projection.map { UsefulDocumentFile.METADATA_COLUMNS.indexOf(it) }
+		val cursor = MatrixCursor(projection, children)
+		for (row in rows)
+			cursor.addRow(Array(columns.size) { row[columns[it]] })
+		return cursor
+	}
+
+	private fun documentCursor(documentId: String): Cursor {
+		val cursor = MatrixCursor(UsefulDocumentFile.METADATA_COLUMNS, 1)
+		rowsById[documentId]?.let { cursor.addRow(it) }
+		return cursor
+	}
+
+	@Benchmark
+	fun cursorBaseline(blackhole: Blackhole) {
+		cursor().use {
+			while (it.moveToNext())
+				blackhole.consume(it.getString(0))
+		}
+	}
+
+	@Benchmark
+	fun iterateDocuments(metadata: Metadata, blackhole: Blackhole) {
+		DocumentIterator.ofCursor(parent, context, cursor(), metadata.withMetadata).use { iterator ->
+			iterator.forEach { blackhole.consume(it) }
+		}
+	}
+
+	/**
+	 * A listing followed by the metadata a file browser shows, served from the listing
+	 */
+	@Benchmark
+	fun iterateDocumentsAndReadMetadata(blackhole: Blackhole) {
+		DocumentIterator.ofCursor(parent, context, cursor(), true).use { iterator ->
+			iterator.forEach {
+				blackhole.consume(it.name)
+				blackhole.consume(it.type)
+				blackhole.consume(it.length)
+				blackhole.consume(it.lastModified)
+			}
+		}
+	}
+
+	/**
+	 * A provider listing, the children query and iteration of [UsefulDocumentFile.listFiles].
+	 * listFiles itself first checks the platform version, which can't be read off a device.
+	 */
+	@Benchmark
+	fun listDocuments(metadata: Metadata, blackhole: Blackhole) {
+		val projection = if (metadata.withMetadata) UsefulDocumentFile.METADATA_COLUMNS else ID_COLUMNS
+		val cursor = DocumentsContractApi21.queryChildren(context, parent.uri, projection)
+		DocumentIterator.ofCursor(parent, context, cursor, metadata.withMetadata).use { iterator ->
+			iterator.forEach { blackhole.consume(it) }
+		}
+	}
+
+	/**
+	 * The metadata of [iterateDocumentsAndReadMetadata] with a provider query per document
+	 * through [ProviderInstrumentation], each held by its own handle
+	 */
+	@Benchmark
+	fun queryEachDocument(blackhole: Blackhole) {
+		for (uri in childUris) {
+			val document = UsefulDocumentFile(parent, context, uri)
+			document.cacheFileData()
+			blackhole.consume(document.name)
+			blackhole.consume(document.type)
+			blackhole.consume(document.length)
+			blackhole.consume(document.lastModified)
+		}
+	}
+
+	@Benchmark
+	fun listFiles(metadata: Metadata): Array<UsefulDocumentFile> {
+		return directory.listFiles(metadata.withMetadata)
+	}
+
+	companion object {
+		private val ID_COLUMNS = arrayOf(DocumentsContract.Document.COLUMN_DOCUMENT_ID)
+		private const val PATH_CHILDREN = "children"
+		private const val AUTHORITY = "com.android.externalstorage.documents"
+		private const val PARENT_ID = "primary:DCIM/Camera"
+		private const val MODIFIED = 1_700_000_000_000L
+		private const val SIZE = 4_000_000L
+		private const val FLAGS = DocumentsContract.Document.FLAG_SUPPORTS_WRITE or DocumentsContract.Document.FLAG_SUPPORTS_DELETE
+	}
+}
@@ -0,0 +1,19 @@
+package com.anthonymandra.framework
+
+import android.content.ContentResolver
+import android.content.ContextWrapper
+import android.content.pm.PackageManager
+import android.net.Uri
+
+/**
+ * Minimal context for driving the library on a plain JVM.  Every uri grant is held, nothing
+ * else is backed by a platform.
+ *
+ * There is no resolver, the framework's can't load off a device.  Provider calls are answered
+ * by the [ProviderInstrumentation.Transport] a benchmark installs, see [StandInTransport].
+ */
+internal class StandInContext : ContextWrapper(null) {
+	override fun checkCallingOrSelfUriPermission(uri: Uri?, modeFlags: Int) = PackageManager.PERMISSION_GRANTED
+
+	override fun getContentResolver(): ContentResolver? = null
+}
@@ -0,0 +1,40 @@
+package com.anthonymandra.framework
+
+import android.content.ContentResolver
+import android.database.Cursor
+import android.net.Uri
+import android.os.Bundle
+import android.os.CancellationSignal
+import android.os.ParcelFileDescriptor
+
+/**
+ * Answers the queries of the library in process, standing in for a provider.  Installed with
+ * [install] and removed with [close], opens are not supported.
+ */
+internal class StandInTransport(private val provider: Provider) : ProviderInstrumentation.Transport, AutoCloseable {
+
+	fun interface Provider {
+		fun query(uri: Uri, projection: Array<String>?): Cursor?
+	}
+
+	fun install() = apply { ProviderInstrumentation.setTransport(this) }
+
+	override fun close() = ProviderInstrumentation.setTransport(null)
+
+	override fun query(resolver: ContentResolver?, uri: Uri, projection: Array<String>?, selection: String?,
+					   selectionArgs: Array<String>?, sortOrder: String?, signal: CancellationSignal?): Cursor? {
+		signal?.throwIfCanceled()
+		return provider.query(uri, projection)
+	}
+
+	override fun query(resolver: ContentResolver?, uri: Uri, projection: Array<String>?, queryArgs: Bundle?,
+					   signal: CancellationSignal?): Cursor? {
+		signal?.throwIfCanceled()
+		return provider.query(uri, projection)
+	}
+
+	override fun openFileDescriptor(resolver: ContentResolver?, uri: Uri, mode: String,
+									signal: CancellationSignal?): ParcelFileDescriptor {
+		throw UnsupportedOperationException("open")
+	}
+}
@@ -0,0 +1,101 @@
+package com.anthonymandra.framework
+
+import android.content.Context
+import android.content.Intent
+import android.content.pm.PackageManager
+import android.net.Uri
+import android.util.Log
+import com.anthonymandra.support.v4.provider.DocumentsContractApi21
+
+/**
+ * Resolves the metadata, including existence, of an arbitrary collection of uris.  Tree uris
+ * are grouped by their parent document and each group is answered with a single children
+ * query, so a large selection costs about one query per distinct folder rather than one or
+ * more per document.
+ *
+ * Uris already held by [MetadataCache] are not queried.  Single documents in a folder, file
+ * uris and documents whose parent cannot be derived from their id are resolved individually.
+ *
+ * @see UsefulDocumentFile.resolve
+ */
+internal object BulkResolver {
+	private val TAG = BulkResolver::class.java.simpleName
+
+	fun resolve(context: Context, uris: Collection<Uri>): Map<Uri, UsefulDocumentFile> {
+		val results = LinkedHashMap<Uri, UsefulDocumentFile>(uris.size * 4 / 3 + 1)
+		// parent uri -> (document id -> requested uri)
+		val groups = HashMap<Uri, HashMap<String, Uri>>()
+
+		// Not consulted while disabled, so the shared cache's counters only reflect its own use
+		val useCache = MetadataCache.isEnabled
+		for (uri in uris) {
+			val cached = if (useCache) MetadataCache.get(uri) else null
+			if (cached != null) {
+				results[uri] = UsefulDocumentFile(null, context, uri, cached)
+				continue
+			}
+
+			val documentId = if (DocumentUtil.hasTreeDocumentId(uri)) DocumentUtil.getDocumentId(uri) else null
+			val parentId = documentId?.let { DocumentUtil.getParentDocumentId(it) }
+			if (parentId == null) {
+				results[uri] = resolveSingle(context, uri)
+				continue
+			}
+
+			val parentUri = TreeUriFactory.forTree(uri).buildDocumentUri(parentId)
+			groups.getOrPut(parentUri) { HashMap() }[documentId] = uri
+		}
+
+		for ((parentUri, documents) in groups) {
+			if (documents.size == 1 || !Util.hasLollipop() || !resolveChildren(context, parentUri, documents, results)) {
+				for (uri in documents.values)
+					results[uri] = resolveSingle(context, uri)
+			}
+		}
+		return results
+	}
+
+	private fun resolveSingle(context: Context, uri: Uri): UsefulDocumentFile {
+		val file = UsefulDocumentFile.fromUri(context, uri)
+		file.cacheFileData()
+		return file
+	}
+
+	/**
+	 * Answer `documents` from a single children query of `parentUri`
+	 *
+	 * @return false if the children could not be queried
+	 */
+	private fun resolveChildren(context: Context, parentUri: Uri, documents: Map<String, Uri>,
+								results: MutableMap<Uri, UsefulDocumentFile>): Boolean {
+		val remaining = HashMap(documents)
+		try {
+			DocumentsContractApi21.queryChildren(context, parentUri, UsefulDocumentFile.METADATA_COLUMNS).use { cursor ->
+				if (cursor == null)
+					return false
+
+				// Siblings share the grant of the tree, so the permissions only need checking once
+				val readPerm = context.checkCallingOrSelfUriPermission(parentUri, Intent.FLAG_GRANT_READ_URI_PERMISSION) == PackageManager.PERMISSION_GRANTED
+				val writePerm = context.checkCallingOrSelfUriPermission(parentUri, Intent.FLAG_GRANT_WRITE_URI_PERMISSION) == PackageManager.PERMISSION_GRANTED
+				val reader = FileDataReader(cursor, readPerm, writePerm)
+				while (remaining.isNotEmpty() && cursor.moveToNext()) {
+					val uri = remaining.remove(reader.documentId() ?: continue) ?: continue
+					val data = reader.read(uri, parentUri)
+					MetadataCache.put(uri, data)
+					results[uri] = UsefulDocumentFile(null, context, uri, data)
+				}
+			}
+		} catch (e: Exception) {
+			Log.w(TAG, "Failed query: $e")
+			return false
+		}
+
+		// Anything not listed by an existing parent does not exist
+		for (uri in remaining.values) {
+			val data = FileData.missing(uri)
+			MetadataCache.put(uri, data)
+			results[uri] = UsefulDocumentFile(null, context, uri, data)
+		}
+		return true
+	}
+}
@@ -0,0 +1,83 @@
+package com.anthonymandra.framework;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput counters for {@link Util#copyLarge} and friends.  Pass an instance to a copy to
+ * measure that call, or read the aggregate of every copy from {@link Util#getCopyStats()}
+ * once enabled with {@link Util#setCopyStatsEnabled(boolean)}.
+ */
+public class CopyStats
+{
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong nanos = new AtomicLong();
+
+	void record(long byteCount, long elapsedNanos)
+	{
+		bytes.addAndGet(byteCount);
+		calls.incrementAndGet();
+		nanos.addAndGet(elapsedNanos);
+	}
+
+	/**
+	 * @return total bytes copied
+	 */
+	public long getBytes()
+	{
+		return bytes.get();
+	}
+
+	/**
+	 * @return number of copies
+	 */
+	public long getCalls()
+	{
+		return calls.get();
+	}
+
+	/**
+	 * @return total time spent copying in nanoseconds
+	 */
+	public long getElapsedNanos()
+	{
+		return nanos.get();
+	}
+
+	/**
+	 * @return average throughput in bytes per second, 0 if nothing was copied
+	 */
+	public double getBytesPerSecond()
+	{
+		long elapsed = nanos.get();
+		if (elapsed == 0)
+			return 0;
+		return bytes.get() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+	}
+
+	/**
+	 * @return average copies per second, 0 if nothing was copied
+	 */
+	public double getCallsPerSecond()
+	{
+		long elapsed = nanos.get();
+		if (elapsed == 0)
+			return 0;
+		return calls.get() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+	}
+
+	public void reset()
+	{
+		bytes.set(0);
+		calls.set(0);
+		nanos.set(0);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "CopyStats{bytes=" + getBytes() + ", calls=" + getCalls() +
+				", bytesPerSecond=" + (long) getBytesPerSecond() + "}";
+	}
+}
@@ -0,0 +1,107 @@
+package com.anthonymandra.framework
+
+import android.net.Uri
+
+/**
+ * Process-wide cache of display name to document id indices, one per directory.  An index is
+ * built from a single children query the first time a directory is searched through
+ * [UsefulDocumentFile.findFile], after which repeated lookups are a hash lookup rather than
+ * a query per child.
+ *
+ * Changes made through [UsefulDocumentFile] invalidate the affected directories.  Changes made
+ * elsewhere are not seen, so call [invalidate] (or [UsefulDocumentFile.invalidateIndex]) when
+ * a directory is known to have changed.
+ */
+object DirectoryIndex {
+	private const val MAX_DIRECTORIES = 32
+
+	private val indices = object : LinkedHashMap<Uri, Map<String, String>>(16, 0.75f, true) {
+		override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Uri, Map<String, String>>?): Boolean {
+			return size > MAX_DIRECTORIES
+		}
+	}
+
+	/**
+	 * Generation of each directory whose index is being built.  Invalidating the directory drops
+	 * it, so an index built concurrently with a change to that directory is not stored, while
+	 * changes to other directories don't affect it.
+	 */
+	private val building = HashMap<Uri, Long>()
+	private var nextGeneration = 0L
+
+	internal fun get(directory: Uri): Map<String, String>? {
+		synchronized(indices) {
+			return indices[directory]
+		}
+	}
+
+	/**
+	 * Begin building the index of `directory`, finish with [put] or [abandon]
+	 */
+	internal fun generation(directory: Uri): Long {
+		synchronized(indices) {
+			val generation = ++nextGeneration
+			building[directory] = generation
+			return generation
+		}
+	}
+
+	/**
+	 * Store the index unless `directory` was invalidated since `builtAt` was acquired
+	 */
+	internal fun put(directory: Uri, index: Map<String, String>, builtAt: Long) {
+		synchronized(indices) {
+			if (building[directory] == builtAt) {
+				building.remove(directory)
+				indices[directory] = index
+			}
+		}
+	}
+
+	/**
+	 * End a build that produced no index, does nothing once it was [put]
+	 */
+	internal fun abandon(directory: Uri, builtAt: Long) {
+		synchronized(indices) {
+			if (building[directory] == builtAt)
+				building.remove(directory)
+		}
+	}
+
+	/**
+	 * Discard the index of `directory`, the next search will list the directory again.
+	 */
+	@JvmStatic
+	fun invalidate(directory: Uri) {
+		synchronized(indices) {
+			building.remove(directory)
+			indices.remove(directory)
+		}
+	}
+
+	/**
+	 * Discard the index of `directory` and of every directory beneath it within the same tree.
+	 */
+	@JvmStatic
+	fun invalidateTree(directory: Uri) {
+		invalidateIf { DocumentUtil.isSameOrDescendant(directory, it) }
+	}
+
+	internal fun invalidateIf(predicate: (Uri) -> Boolean) {
+		synchronized(indices) {
+			building.keys.removeAll(predicate)
+			indices.keys.removeAll(predicate)
+		}
+	}
+
+	/**
+	 * Discard all indices.
+	 */
+	@JvmStatic
+	fun clear() {
+		synchronized(indices) {
+			building.clear()
+			indices.clear()
+		}
+	}
+}
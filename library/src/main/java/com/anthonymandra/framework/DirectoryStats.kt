@@ -0,0 +1,293 @@
+package com.anthonymandra.framework
+
+import android.content.ContentResolver
+import android.content.Context
+import android.net.Uri
+import android.provider.DocumentsContract
+import com.anthonymandra.support.v4.provider.DocumentsContractApi21
+import java.io.File
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RecursiveTask
+import java.util.concurrent.TimeUnit
+
+/**
+ * Aggregate size and content of a directory tree, see [UsefulDocumentFile.stats].
+ *
+ * @param totalBytes size of every file beneath the directory
+ * @param fileCount number of files beneath the directory
+ * @param directoryCount number of directories beneath the directory, excluding itself
+ * @param countsByType number of files of each MIME type
+ * @param lastModified newest modified time of anything beneath the directory, 0 if empty
+ * @param isComplete false if a directory beneath could not be listed and is missing from the totals
+ */
+class DirectoryStats internal constructor(
+	val totalBytes: Long,
+	val fileCount: Long,
+	val directoryCount: Long,
+	val countsByType: Map<String, Long>,
+	val lastModified: Long,
+	val isComplete: Boolean) {
+
+	override fun toString() =
+		"$totalBytes bytes, $fileCount files, $directoryCount directories, $countsByType, modified $lastModified" +
+			if (isComplete) "" else ", incomplete"
+
+	/**
+	 * Mutable totals of a directory, merged bottom up
+	 */
+	internal class Builder {
+		private var totalBytes = 0L
+		private var fileCount = 0L
+		private var directoryCount = 0L
+		private val countsByType = HashMap<String, Long>()
+		private var lastModified = 0L
+		private var isComplete = true
+
+		fun addFile(size: Long, type: String?, modified: Long) {
+			if (size > 0)
+				totalBytes += size
+			fileCount++
+			val key = type ?: DEFAULT_TYPE
+			countsByType[key] = (countsByType[key] ?: 0L) + 1
+			lastModified = maxOf(lastModified, modified)
+		}
+
+		fun addDirectory(stats: DirectoryStats, modified: Long) {
+			totalBytes += stats.totalBytes
+			fileCount += stats.fileCount
+			directoryCount += stats.directoryCount + 1
+			for ((type, count) in stats.countsByType)
+				countsByType[type] = (countsByType[type] ?: 0L) + count
+			lastModified = maxOf(lastModified, modified, stats.lastModified)
+			isComplete = isComplete && stats.isComplete
+		}
+
+		fun failed() {
+			isComplete = false
+		}
+
+		fun build() = DirectoryStats(totalBytes, fileCount, directoryCount, countsByType, lastModified, isComplete)
+	}
+
+	/**
+	 * Computes a directory from a single minimal children query, forking a task for each
+	 * subdirectory whose memoized stats are not current
+	 */
+	private class StatsTask(
+		private val context: Context,
+		private val directory: Uri,
+		private val modified: Long) : RecursiveTask<DirectoryStats>() {
+
+		override fun compute(): DirectoryStats {
+			DirectoryStatsCache.get(directory, modified)?.let { return it }
+
+			val builtAt = DirectoryStatsCache.generation(directory)
+			try {
+				return list(builtAt)
+			} finally {
+				DirectoryStatsCache.abandon(directory, builtAt)
+			}
+		}
+
+		private fun list(builtAt: Long): DirectoryStats {
+			val builder = Builder()
+			val subdirectories = ArrayList<Pair<StatsTask, Long>>()
+			if (ContentResolver.SCHEME_FILE.equals(directory.scheme, ignoreCase = true)) {
+				val files = File(directory.path!!).listFiles()
+				if (files == null)
+					builder.failed()
+				files?.forEach { file ->
+					if (file.isDirectory)
+						subdirectories.add(fork(Uri.fromFile(file), file.lastModified()))
+					else
+						builder.addFile(file.length(), UsefulDocumentFile.getTypeForName(file.name), file.lastModified())
+				}
+			} else {
+				val children = DocumentsContractApi21.queryChildren(context, directory, COLUMNS)
+				if (children == null)
+					builder.failed()
+				children?.use { cursor ->
+					val uriFactory = TreeUriFactory.forTree(directory)
+					while (cursor.moveToNext()) {
+						val type = cursor.getString(TYPE)
+						val modified = if (cursor.isNull(MODIFIED)) 0L else cursor.getLong(MODIFIED)
+						if (DocumentsContract.Document.MIME_TYPE_DIR == type) {
+							val id = cursor.getString(ID) ?: continue
+							subdirectories.add(fork(uriFactory.buildDocumentUri(id), modified))
+						} else {
+							builder.addFile(if (cursor.isNull(SIZE)) 0L else cursor.getLong(SIZE), type, modified)
+						}
+					}
+				}
+			}
+
+			for ((task, modified) in subdirectories)
+				builder.addDirectory(task.join(), modified)
+
+			val stats = builder.build()
+			// A failed listing, here or beneath, is retried next time rather than remembered as empty
+			if (stats.isComplete)
+				DirectoryStatsCache.put(directory, modified, stats, builtAt)
+			return stats
+		}
+
+		private fun fork(subdirectory: Uri, modified: Long) =
+			StatsTask(context, subdirectory, modified).apply { fork() } to modified
+	}
+
+	companion object {
+		private const val DEFAULT_TYPE = "application/octet-stream"
+
+		private val COLUMNS = arrayOf(
+			DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+			DocumentsContract.Document.COLUMN_MIME_TYPE,
+			DocumentsContract.Document.COLUMN_SIZE,
+			DocumentsContract.Document.COLUMN_LAST_MODIFIED)
+		private const val ID = 0
+		private const val TYPE = 1
+		private const val SIZE = 2
+		private const val MODIFIED = 3
+
+		/**
+		 * Shared by every computation of the same parallelism, callers rarely use more than one.
+		 * Worker threads are created on demand and are daemons, so the pools are never shut down
+		 */
+		private val pools = ConcurrentHashMap<Int, ForkJoinPool>()
+
+		internal fun compute(context: Context, directory: UsefulDocumentFile, parallelism: Int): DirectoryStats {
+			val pool = pools.getOrPut(parallelism) { ForkJoinPool(parallelism) }
+			return pool.invoke(StatsTask(context, directory.uri, directory.lastModified))
+		}
+	}
+}
+
+/**
+ * Process-wide memo of [DirectoryStats], one per directory, valid while the directory's
+ * modified time is unchanged and for at most [ttlMillis].  A re-check then only lists the
+ * branches that changed or expired.
+ *
+ * A directory's modified time reflects its own entries, not those of its descendants or the
+ * contents of its files, so a memo can't tell that a deeper branch changed.  Changes made
+ * through [UsefulDocumentFile] and those seen by a [TreeObserver] discard the memo of every
+ * ancestor, and any other change is picked up once the memo expires.  Call [invalidate] when a
+ * tree is known to have changed, or set [ttlMillis] to 0 to list the whole tree every time.
+ */
+object DirectoryStatsCache {
+	private const val MAX_DIRECTORIES = 4096
+
+	private class Entry(val modified: Long, val stats: DirectoryStats, val cachedAt: Long)
+
+	private val entries = object : LinkedHashMap<Uri, Entry>(16, 0.75f, true) {
+		override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Uri, Entry>?): Boolean {
+			return size > MAX_DIRECTORIES
+		}
+	}
+
+	/**
+	 * Generation of each directory whose stats are being computed.  Invalidating the directory,
+	 * or anything beneath it, drops it, so stats computed concurrently with a change to that
+	 * branch are not stored, while changes elsewhere don't affect them.
+	 */
+	private val building = HashMap<Uri, Long>()
+	private var nextGeneration = 0L
+
+	/**
+	 * Time the stats of a subtree are trusted without listing it
+	 */
+	@JvmStatic
+	@Volatile
+	var ttlMillis = 60_000L
+		set(value) {
+			require(value >= 0) { "ttlMillis must not be negative" }
+			field = value
+		}
+
+	/**
+	 * Begin computing the stats of `directory`, finish with [put] and [abandon]
+	 */
+	internal fun generation(directory: Uri): Long {
+		synchronized(entries) {
+			val generation = ++nextGeneration
+			building[directory] = generation
+			return generation
+		}
+	}
+
+	/**
+	 * End a computation, once its stats were [put] or if there are none to store
+	 */
+	internal fun abandon(directory: Uri, builtAt: Long) {
+		synchronized(entries) {
+			if (building[directory] == builtAt)
+				building.remove(directory)
+		}
+	}
+
+	/**
+	 * @return the memoized stats if `directory` is still at `modified` and they have not expired
+	 */
+	internal fun get(directory: Uri, modified: Long): DirectoryStats? {
+		if (modified <= 0)
+			return null // Without a modified time there's no telling if the directory changed
+		synchronized(entries) {
+			val entry = entries[directory] ?: return null
+			if (System.nanoTime() - entry.cachedAt > TimeUnit.MILLISECONDS.toNanos(ttlMillis)) {
+				entries.remove(directory)
+				return null
+			}
+			return if (entry.modified == modified) entry.stats else null
+		}
+	}
+
+	/**
+	 * Store the stats unless `directory` was invalidated since `builtAt` was acquired
+	 */
+	internal fun put(directory: Uri, modified: Long, stats: DirectoryStats, builtAt: Long) {
+		if (modified <= 0)
+			return
+		synchronized(entries) {
+			if (building[directory] == builtAt)
+				entries[directory] = Entry(modified, stats, System.nanoTime())
+		}
+	}
+
+	/**
+	 * Discard the stats of `document` and of every directory containing it
+	 */
+	@JvmStatic
+	fun invalidate(document: Uri) {
+		invalidateIf { isAncestorOrSelf(it, document) }
+	}
+
+	internal fun invalidateIf(predicate: (Uri) -> Boolean) {
+		synchronized(entries) {
+			// Creates and deletes invalidate whether or not stats were ever asked for
+			if (entries.isEmpty() && building.isEmpty())
+				return
+			building.keys.removeAll(predicate)
+			entries.keys.removeAll(predicate)
+		}
+	}
+
+	@JvmStatic
+	fun clear() {
+		synchronized(entries) {
+			building.clear()
+			entries.clear()
+		}
+	}
+
+	private fun isAncestorOrSelf(directory: Uri, document: Uri): Boolean {
+		if (ContentResolver.SCHEME_FILE.equals(document.scheme, ignoreCase = true)) {
+			val path = document.path ?: return false
+			val ancestor = directory.path ?: return false
+			return directory.scheme == document.scheme && (path == ancestor || path.startsWith("$ancestor/"))
+		}
+		if (directory.authority != document.authority)
+			return false
+		val ancestorId = DocumentUtil.getDocumentId(directory) ?: return false
+		val id = DocumentUtil.getDocumentId(document) ?: return false
+		return id == ancestorId || id.startsWith(if (ancestorId.endsWith(":")) ancestorId else "$ancestorId/")
+	}
+}
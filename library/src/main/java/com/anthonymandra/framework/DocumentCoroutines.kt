@@ -0,0 +1,112 @@
+package com.anthonymandra.framework
+
+import android.os.CancellationSignal
+import android.os.OperationCanceledException
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.withContext
+
+/**
+ * Suspending variants of the blocking [UsefulDocumentFile] operations.
+ *
+ * Queries are issued with a [CancellationSignal] that is cancelled along with the calling
+ * coroutine, so a listing abandoned by leaving a screen stops in the provider rather than
+ * running to completion.  Creates, deletes and renames can't be interrupted once issued, so
+ * cancellation is only honoured before they start; one cancelled mid-call may still have
+ * taken effect.
+ */
+object DocumentDispatchers {
+	/**
+	 * Dispatcher the suspending operations run on by default.  Replace to control threading
+	 * in tests.
+	 */
+	@JvmStatic
+	@Volatile
+	var io: CoroutineDispatcher = Dispatchers.IO
+}
+
+/**
+ * Run `block` on `dispatcher` with a signal that is cancelled if the calling coroutine is
+ */
+internal suspend fun <T> withCancellationSignal(dispatcher: CoroutineDispatcher, block: (CancellationSignal) -> T): T = coroutineScope {
+	val signal = CancellationSignal()
+	val work = async(dispatcher) {
+		try {
+			block(signal)
+		} catch (e: OperationCanceledException) {
+			if (!signal.isCanceled)
+				throw e
+			throw CancellationException("Provider call cancelled").apply { initCause(e) }
+		}
+	}
+	try {
+		work.await()
+	} catch (e: CancellationException) {
+		// The scope still waits for the blocked call, which the signal cuts short
+		signal.cancel()
+		throw e
+	}
+}
+
+/**
+ * @see UsefulDocumentFile.listFiles
+ */
+suspend fun UsefulDocumentFile.awaitListFiles(withMetadata: Boolean = false,
+											  dispatcher: CoroutineDispatcher = DocumentDispatchers.io): Array<UsefulDocumentFile> =
+	withCancellationSignal(dispatcher) { listFiles(withMetadata, it) }
+
+/**
+ * @see UsefulDocumentFile.exists
+ */
+suspend fun UsefulDocumentFile.awaitExists(dispatcher: CoroutineDispatcher = DocumentDispatchers.io): Boolean =
+	withCancellationSignal(dispatcher) { exists(it) }
+
+/**
+ * @see UsefulDocumentFile.cacheFileData
+ */
+suspend fun UsefulDocumentFile.awaitCacheFileData(dispatcher: CoroutineDispatcher = DocumentDispatchers.io) =
+	withCancellationSignal(dispatcher) { cacheFileData(it) }
+
+/**
+ * @see UsefulDocumentFile.create
+ */
+suspend fun UsefulDocumentFile.awaitCreate(isDirectory: Boolean = false, createDirectories: Boolean = true,
+										   dispatcher: CoroutineDispatcher = DocumentDispatchers.io): Boolean =
+	withContext(dispatcher) { create(isDirectory, createDirectories) }
+
+/**
+ * @see UsefulDocumentFile.createFile
+ */
+suspend fun UsefulDocumentFile.awaitCreateFile(mimeType: String?, displayName: String,
+											   dispatcher: CoroutineDispatcher = DocumentDispatchers.io): UsefulDocumentFile? =
+	withContext(dispatcher) { createFile(mimeType, displayName) }
+
+/**
+ * @see UsefulDocumentFile.createDirectory
+ */
+suspend fun UsefulDocumentFile.awaitCreateDirectory(displayName: String,
+													dispatcher: CoroutineDispatcher = DocumentDispatchers.io): UsefulDocumentFile? =
+	withContext(dispatcher) { createDirectory(displayName) }
+
+/**
+ * @see UsefulDocumentFile.createPath
+ */
+suspend fun UsefulDocumentFile.awaitCreatePath(path: String, mimeType: String? = null,
+											   dispatcher: CoroutineDispatcher = DocumentDispatchers.io): UsefulDocumentFile? =
+	withContext(dispatcher) { createPath(path, mimeType) }
+
+/**
+ * @see UsefulDocumentFile.delete
+ */
+suspend fun UsefulDocumentFile.awaitDelete(dispatcher: CoroutineDispatcher = DocumentDispatchers.io): Boolean =
+	withContext(dispatcher) { delete() }
+
+/**
+ * @see UsefulDocumentFile.renameTo
+ */
+suspend fun UsefulDocumentFile.awaitRenameTo(displayName: String,
+											 dispatcher: CoroutineDispatcher = DocumentDispatchers.io): Boolean =
+	withContext(dispatcher) { renameTo(displayName) }
@@ -0,0 +1,151 @@
+package com.anthonymandra.framework
+
+import android.os.CancellationSignal
+import android.os.OperationCanceledException
+import android.util.Log
+import java.io.File
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RecursiveTask
+import java.util.concurrent.Semaphore
+
+/**
+ * Deletes many documents at once.  Provider deletes run concurrently on a bounded pool of
+ * worker threads, with at most `perAuthority` in flight against any one provider so a slow
+ * provider isn't flooded.  File directories are deleted recursively with fork-join over
+ * their subdirectories rather than one file at a time.
+ *
+ * If the [CancellationSignal] is cancelled, documents not yet started are skipped and file
+ * directories stop between files, both reported as [Status.CANCELLED].  A cancelled directory
+ * may be partially deleted.
+ *
+ * @param parallelism number of documents deleted at once
+ * @param perAuthority number of documents deleted at once within a single provider
+ * @param signal cancels the remaining deletes
+ */
+class DocumentDeleter @JvmOverloads constructor(
+	private val parallelism: Int = DEFAULT_PARALLELISM,
+	private val perAuthority: Int = DEFAULT_PER_AUTHORITY,
+	private val signal: CancellationSignal? = null) {
+
+	enum class Status {
+		DELETED,
+		FAILED,
+		CANCELLED
+	}
+
+	/**
+	 * @param error the exception that failed the delete, if any
+	 */
+	class Result(val file: UsefulDocumentFile, val status: Status, val error: Exception? = null) {
+		val isDeleted get() = status == Status.DELETED
+
+		override fun toString() = "${file.uri}: $status" + (error?.let { " ($it)" } ?: "")
+	}
+
+	private val authorityPermits = ConcurrentHashMap<String, Semaphore>()
+
+	init {
+		require(parallelism > 0) { "parallelism must be positive" }
+		require(perAuthority > 0) { "perAuthority must be positive" }
+	}
+
+	/**
+	 * Delete `files`, blocking until every one has completed.  Directories are deleted along
+	 * with their contents.
+	 *
+	 * @return a result for each file, in the order given
+	 */
+	fun deleteAll(files: Collection<UsefulDocumentFile>): List<Result> {
+		if (files.isEmpty())
+			return emptyList()
+
+		val executor = Executors.newFixedThreadPool(minOf(parallelism, files.size))
+		try {
+			val pending = files.map { file -> executor.submit(Callable { delete(file) }) }
+			return pending.map {
+				try {
+					it.get()
+				} catch (e: ExecutionException) {
+					throw e.cause ?: e
+				}
+			}
+		} finally {
+			executor.shutdownNow()
+		}
+	}
+
+	private fun delete(file: UsefulDocumentFile): Result {
+		if (signal?.isCanceled == true)
+			return Result(file, Status.CANCELLED)
+
+		val permits = file.uri.authority?.let { authorityPermits.getOrPut(it) { Semaphore(perAuthority) } }
+		permits?.acquireUninterruptibly()
+		try {
+			if (signal?.isCanceled == true)
+				return Result(file, Status.CANCELLED)
+			return Result(file, if (file.delete(signal)) Status.DELETED else Status.FAILED)
+		} catch (e: OperationCanceledException) {
+			return Result(file, Status.CANCELLED)
+		} catch (e: Exception) {
+			Log.w(TAG, "Failed to delete ${file.uri}: $e")
+			return Result(file, Status.FAILED, e)
+		} finally {
+			permits?.release()
+		}
+	}
+
+	/**
+	 * Deletes a directory's files while subdirectories are deleted by forked tasks
+	 */
+	private class DeleteTreeTask(private val directory: File, private val signal: CancellationSignal?) : RecursiveTask<Boolean>() {
+		override fun compute(): Boolean {
+			signal?.throwIfCanceled()
+			var success = true
+			val subdirectories = ArrayList<DeleteTreeTask>()
+			directory.listFiles()?.forEach { file ->
+				if (file.isDirectory) {
+					subdirectories.add(DeleteTreeTask(file, signal).apply { fork() })
+				} else {
+					signal?.throwIfCanceled()
+					if (!file.delete()) {
+						Log.w(TAG, "Failed to delete $file")
+						success = false
+					}
+				}
+			}
+			for (task in subdirectories)
+				success = task.join() and success
+
+			if (!directory.delete()) {
+				Log.w(TAG, "Failed to delete $directory")
+				return false
+			}
+			return success
+		}
+	}
+
+	companion object {
+		private val TAG = DocumentDeleter::class.java.simpleName
+
+		const val DEFAULT_PARALLELISM = 4
+		const val DEFAULT_PER_AUTHORITY = 2
+
+		/** Worker threads are created on demand and are daemons, so the pool is never shut down */
+		private val treePool by lazy { ForkJoinPool(DEFAULT_PARALLELISM) }
+
+		/**
+		 * Delete `file` and, if it's a directory, everything beneath it.
+		 *
+		 * @throws OperationCanceledException if `signal` is cancelled part way
+		 */
+		internal fun deleteTree(file: File, signal: CancellationSignal?): Boolean {
+			if (!file.isDirectory)
+				return file.delete()
+			return treePool.invoke(DeleteTreeTask(file, signal))
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package com.anthonymandra.framework;
+
+import android.provider.DocumentsContract;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A parsed typical document id, such as '0000-0000:folder/file.ext'.  The root, path and name
+ * are held as offsets into the original id, so parsing allocates nothing beyond this object and
+ * related ids are derived without splitting and joining segment arrays.  Roots such as
+ * 'primary' or '0000-0000' are shared between instances.
+ * <p>
+ * An id without a root separator is treated as a root, as {@link DocumentUtil} always has.
+ *
+ * @see DocumentsContract#getDocumentId(android.net.Uri)
+ */
+@SuppressWarnings("unused")
+public final class DocumentId
+{
+	private static final char ROOT_SEPARATOR = ':';
+	private static final char PATH_SEPARATOR = '/';
+	private static final int MAX_ROOTS = 16;
+
+	/** Copy on write, there are only ever a handful of roots */
+	private static volatile String[] sRoots = new String[0];
+
+	private final String id;
+	/** Index of the root separator, or the length of the id when there is none */
+	private final int rootEnd;
+	/** Start of the last path segment */
+	private final int nameStart;
+
+	private String root;
+
+	private DocumentId(String id)
+	{
+		this.id = id;
+		int separator = id.indexOf(ROOT_SEPARATOR);
+		rootEnd = separator < 0 ? id.length() : separator;
+		int lastSlash = id.lastIndexOf(PATH_SEPARATOR);
+		nameStart = lastSlash > rootEnd ? lastSlash + 1 : Math.min(rootEnd + 1, id.length());
+	}
+
+	public static DocumentId parse(@NonNull String documentId)
+	{
+		return new DocumentId(documentId);
+	}
+
+	/**
+	 * @return the root id, '0000-0000' of '0000-0000:folder/file.ext'
+	 */
+	@NonNull
+	public String getRoot()
+	{
+		if (root == null)
+			root = rootEnd >= id.length() ? id : internRoot(id, rootEnd);
+		return root;
+	}
+
+	/**
+	 * @return the path within the root, 'folder/file.ext' of '0000-0000:folder/file.ext'
+	 */
+	@NonNull
+	public String getPath()
+	{
+		return rootEnd >= id.length() ? "" : id.substring(rootEnd + 1);
+	}
+
+	/**
+	 * @return the last path segment, 'file.ext' of '0000-0000:folder/file.ext', or null for a root
+	 */
+	@Nullable
+	public String getName()
+	{
+		if (isRoot())
+			return null;
+		return id.substring(nameStart);
+	}
+
+	/**
+	 * @return true if this id has no path within its root
+	 */
+	public boolean isRoot()
+	{
+		return rootEnd >= id.length() - 1;
+	}
+
+	/**
+	 * @return number of path segments, 0 for a root
+	 */
+	public int getSegmentCount()
+	{
+		if (isRoot())
+			return 0;
+		int count = 1;
+		for (int i = rootEnd + 1; i < id.length(); i++)
+		{
+			if (id.charAt(i) == PATH_SEPARATOR)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return the id of the containing folder, '0000-0000:folder' of '0000-0000:folder/file.ext',
+	 * or null for a root
+	 */
+	@Nullable
+	public DocumentId getParent()
+	{
+		if (isRoot())
+			return null;
+		// The parent of the first segment is the root itself, which keeps its separator
+		int end = nameStart > rootEnd + 1 ? nameStart - 1 : rootEnd + 1;
+		return new DocumentId(id.substring(0, end));
+	}
+
+	/**
+	 * @return the id of a child of this folder
+	 */
+	@NonNull
+	public DocumentId getChild(@NonNull String name)
+	{
+		if (isRoot() && rootEnd < id.length())
+			return new DocumentId(id + name);
+		return new DocumentId(id + PATH_SEPARATOR + name);
+	}
+
+	/**
+	 * @return the id of a sibling within the same folder, or null for a root
+	 */
+	@Nullable
+	public DocumentId getNeighbor(@NonNull String name)
+	{
+		if (isRoot())
+			return null;
+		return new DocumentId(id.substring(0, nameStart) + name);
+	}
+
+	/**
+	 * Share root strings between ids rather than allocating one per parse
+	 */
+	private static String internRoot(String id, int rootEnd)
+	{
+		String[] roots = sRoots;
+		for (String known : roots)
+		{
+			if (known.length() == rootEnd && id.startsWith(known))
+				return known;
+		}
+
+		String root = id.substring(0, rootEnd);
+		if (roots.length < MAX_ROOTS)
+		{
+			synchronized (DocumentId.class)
+			{
+				if (sRoots.length < MAX_ROOTS)
+				{
+					String[] updated = new String[sRoots.length + 1];
+					System.arraycopy(sRoots, 0, updated, 0, sRoots.length);
+					updated[sRoots.length] = root;
+					sRoots = updated;
+				}
+			}
+		}
+		return root;
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o) return true;
+		if (!(o instanceof DocumentId)) return false;
+		return id.equals(((DocumentId) o).id);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return id.hashCode();
+	}
+
+	/**
+	 * @return the document id
+	 */
+	@NonNull
+	@Override
+	public String toString()
+	{
+		return id;
+	}
+}
@@ -0,0 +1,166 @@
+package com.anthonymandra.framework
+
+import android.content.Context
+import android.content.Intent
+import android.content.pm.PackageManager
+import android.database.Cursor
+import android.net.Uri
+import android.os.OperationCanceledException
+import android.provider.DocumentsContract
+import android.util.Log
+import java.io.Closeable
+import java.io.File
+
+/**
+ * Lazily enumerates the children of a directory.  Document children are produced one by one
+ * from the open children cursor and file children from the raw directory entries, so nothing
+ * beyond the current child is materialized and callers can begin processing immediately.
+ *
+ * A cursor that fails part way, such as when the provider process dies, is logged and ends the
+ * iteration with the children read so far.  [failed] then tells that apart from a complete
+ * listing, as it does a listing that couldn't be made at all.
+ *
+ * The underlying cursor is closed once the iterator is exhausted.  If iteration is abandoned
+ * early the iterator must be closed, which is simplest through [UsefulDocumentFile.useFiles]
+ * or `use`.
+ *
+ * @see UsefulDocumentFile.iterateFiles
+ */
+class DocumentIterator private constructor(
+	private val parent: UsefulDocumentFile,
+	private val context: Context,
+	private var cursor: Cursor?,
+	private val files: Array<String>?,
+	private val withMetadata: Boolean,
+	private val positions: IntArray? = null,
+	private val filter: ListOptions? = null) : Iterator<UsefulDocumentFile>, Closeable {
+
+	private val idIndex = cursor?.getColumnIndex(DocumentsContract.Document.COLUMN_DOCUMENT_ID) ?: -1
+	private val reader = cursor?.let {
+		if (withMetadata) {
+			// Children share the grant of the tree, so the permissions only need checking once
+			val readPerm = context.checkCallingOrSelfUriPermission(parent.uri, Intent.FLAG_GRANT_READ_URI_PERMISSION) == PackageManager.PERMISSION_GRANTED
+			val writePerm = context.checkCallingOrSelfUriPermission(parent.uri, Intent.FLAG_GRANT_WRITE_URI_PERMISSION) == PackageManager.PERMISSION_GRANTED
+			FileDataReader(it, readPerm, writePerm)
+		} else null
+	}
+	private val uriFactory = cursor?.let { TreeUriFactory.forTree(parent.uri) }
+	private val filterColumns = if (filter != null) cursor?.let { ListOptions.Columns(it) } else null
+	private var fileIndex = 0
+	private var positionIndex = 0
+	private var nextChild: UsefulDocumentFile? = null
+
+	/**
+	 * True if the listing couldn't be made, or ended early because the cursor failed
+	 */
+	internal var failed = cursor == null && files == null
+		private set
+
+	/**
+	 * The number of children the source reported.  This is a sizing hint only, children
+	 * that cannot be represented, or that a filter rejects as it goes, are skipped during
+	 * iteration.
+	 */
+	val count: Int
+		get() = positions?.size ?: cursor?.count ?: files?.size ?: 0
+
+	override fun hasNext(): Boolean {
+		if (nextChild == null)
+			nextChild = advance()
+		return nextChild != null
+	}
+
+	override fun next(): UsefulDocumentFile {
+		if (!hasNext())
+			throw NoSuchElementException()
+		val child = nextChild!!
+		nextChild = null
+		return child
+	}
+
+	private fun advance(): UsefulDocumentFile? {
+		val c = cursor
+		if (c != null) {
+			try {
+				while (moveToNext(c)) {
+					if (c.isNull(idIndex))
+						continue
+					val childUri = uriFactory!!.buildDocumentUri(c.getString(idIndex))
+					return if (reader != null) {
+						UsefulDocumentFile(parent, context, childUri, reader.read(childUri, parent.uri))
+					} else
+						UsefulDocumentFile(parent, context, childUri)
+				}
+			} catch (e: OperationCanceledException) {
+				close()
+				throw e
+			} catch (e: Exception) {
+				// A provider that dies mid listing ends it early, as a failed query returns nothing
+				Log.w(TAG, "Failed query: $e")
+				failed = true
+			}
+		} else if (files != null && fileIndex < files.size) {
+			val child = UsefulDocumentFile(parent, context, Uri.fromFile(File(parent.uri.path, files[fileIndex++])))
+			if (withMetadata)
+				child.cacheFileData()
+			return child
+		}
+		close()
+		return null
+	}
+
+	/**
+	 * Pass over the first `count` children without creating them, before iterating
+	 */
+	internal fun skip(count: Int) {
+		val c = cursor
+		if (c != null) {
+			for (i in 0 until count) {
+				if (!moveToNext(c))
+					return
+			}
+		} else if (files != null) {
+			fileIndex = minOf(fileIndex + count, files.size)
+		}
+	}
+
+	/**
+	 * Step to the next row, or the next selected row if the listing was sorted or filtered
+	 */
+	private fun moveToNext(c: Cursor): Boolean {
+		if (positions != null)
+			return positionIndex < positions.size && c.moveToPosition(positions[positionIndex++])
+		if (filter == null)
+			return c.moveToNext()
+		while (c.moveToNext()) {
+			if (filter.accept(c, filterColumns!!))
+				return true
+		}
+		return false
+	}
+
+	/**
+	 * Release the underlying cursor.  Safe to call multiple times.
+	 */
+	override fun close() {
+		cursor?.close()
+		cursor = null
+	}
+
+	internal companion object {
+		private val TAG = DocumentIterator::class.java.simpleName
+
+		fun ofCursor(parent: UsefulDocumentFile, context: Context, cursor: Cursor?, withMetadata: Boolean,
+					 options: ListOptions? = null): DocumentIterator {
+			// Only a sort reads every row up front, filters are applied as the rows are reached
+			return if (options != null && options.isSorted)
+				DocumentIterator(parent, context, cursor, null, withMetadata, cursor?.let { options.select(it) })
+			else
+				DocumentIterator(parent, context, cursor, null, withMetadata, filter = options)
+		}
+
+		fun ofFile(parent: UsefulDocumentFile, context: Context, directory: File, withMetadata: Boolean,
+				   options: ListOptions? = null) =
+			DocumentIterator(parent, context, null, options?.select(directory) ?: directory.list(), withMetadata)
+	}
+}
@@ -0,0 +1,114 @@
+package com.anthonymandra.framework
+
+import android.os.Build
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.FlowCollector
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
+import java.io.IOException
+
+/** Children per page, about a screenful */
+private const val DEFAULT_PAGE_SIZE = 100
+
+/**
+ * One page of a children query made with paging arguments.  Providers that ignore the
+ * arguments return every child, which [limitHonored] and [offsetHonored] reveal.
+ *
+ * @param rows rows the provider returned
+ */
+internal class ChildPage(
+	val children: DocumentIterator,
+	val rows: Int,
+	val limitHonored: Boolean,
+	val offsetHonored: Boolean)
+
+/**
+ * The children of this directory as a flow of pages, so the first screenful can be shown
+ * without waiting for the whole of a huge directory to cross the binder.
+ *
+ * On Oreo and later each page is a separate query limited with
+ * [android.content.ContentResolver.QUERY_ARG_LIMIT] and
+ * [android.content.ContentResolver.QUERY_ARG_OFFSET].  Providers that don't honor these, and
+ * file uris, are read through a single cursor emitted in chunks of `pageSize`, which still
+ * only fills the first cursor window before the first page.  A provider that honors the limit
+ * but not the offset has its first page emitted before the rest is read through a single
+ * cursor.
+ *
+ * Cancelling collection cancels any query in flight.  A query that fails, or a cursor that
+ * fails part way, ends the flow with an [IOException] after the pages already read, rather
+ * than completing it as if the directory ended there.
+ *
+ * @param pageSize children per page, by default 100
+ * @param withMetadata populate the cached data of each child from the listing
+ * @see UsefulDocumentFile.listFiles
+ */
+fun UsefulDocumentFile.listFilesPaged(pageSize: Int = DEFAULT_PAGE_SIZE, withMetadata: Boolean = false,
+									  dispatcher: CoroutineDispatcher = DocumentDispatchers.io): Flow<List<UsefulDocumentFile>> {
+	require(pageSize > 0) { "pageSize must be positive" }
+	return flow {
+		if (isFileScheme(uri) || Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+			emitChunks(this@listFilesPaged, withCancellationSignal(dispatcher) { iterateFiles(withMetadata, it) }, pageSize)
+			return@flow
+		}
+
+		var offset = 0
+		while (true) {
+			val page = withCancellationSignal(dispatcher) { queryPage(offset, pageSize, withMetadata, it) }
+				?: throw listingFailed(this@listFilesPaged)
+			if (offset == 0 && !(page.limitHonored && page.offsetHonored)) {
+				if (page.limitHonored) {
+					// Only the first page arrived and there's no way to ask for the next, so show it
+					// then read on from a single unpaged query
+					val first = readPage(this@listFilesPaged, page.children)
+					if (first.isNotEmpty())
+						emit(first)
+					if (page.rows < pageSize)
+						return@flow
+					val rest = withCancellationSignal(dispatcher) { iterateFiles(withMetadata, it) }
+					rest.skip(pageSize)
+					emitChunks(this@listFilesPaged, rest, pageSize)
+				} else {
+					emitChunks(this@listFilesPaged, page.children, pageSize)
+				}
+				return@flow
+			}
+
+			val children = readPage(this@listFilesPaged, page.children)
+			if (children.isNotEmpty())
+				emit(children)
+			if (page.rows < pageSize)
+				return@flow
+			offset += pageSize
+		}
+	}.flowOn(dispatcher)
+}
+
+private fun listingFailed(directory: UsefulDocumentFile) = IOException("Failed to list ${directory.uri}")
+
+private fun readPage(directory: UsefulDocumentFile, children: DocumentIterator): List<UsefulDocumentFile> {
+	children.use {
+		val page = it.asSequence().toList()
+		if (it.failed)
+			throw listingFailed(directory)
+		return page
+	}
+}
+
+private suspend fun FlowCollector<List<UsefulDocumentFile>>.emitChunks(directory: UsefulDocumentFile,
+																	   children: DocumentIterator, pageSize: Int) {
+	children.use {
+		var page = ArrayList<UsefulDocumentFile>(minOf(pageSize, it.count))
+		for (child in it) {
+			page.add(child)
+			if (page.size == pageSize) {
+				emit(page)
+				page = ArrayList(pageSize)
+			}
+		}
+		if (page.isNotEmpty())
+			emit(page)
+		if (it.failed)
+			throw listingFailed(directory)
+	}
+}
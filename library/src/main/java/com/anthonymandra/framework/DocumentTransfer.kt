@@ -0,0 +1,233 @@
+package com.anthonymandra.framework
+
+import android.content.ContentResolver
+import android.content.Context
+import android.os.Build
+import android.os.CancellationSignal
+import android.os.OperationCanceledException
+import android.os.ParcelFileDescriptor
+import android.provider.DocumentsContract
+import android.system.ErrnoException
+import android.system.Os
+import android.system.OsConstants
+import android.util.Log
+import java.io.FileDescriptor
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+
+/**
+ * Copies and moves documents between directories using the fastest path available:
+ *
+ *  * The provider's own copy or move when the source advertises
+ *  [DocumentsContract.Document.FLAG_SUPPORTS_COPY] or [DocumentsContract.Document.FLAG_SUPPORTS_MOVE]
+ *  and both documents belong to the same provider.
+ *  * [java.nio.channels.FileChannel.transferTo] when both descriptors are regular files, which
+ *  the kernel completes with sendfile without copying through the heap.
+ *  * A stream copy through the reusable buffer of [Util.copyLarge] otherwise.
+ *
+ * Only documents are transferred, directories are rejected.  Failures return null, a partially
+ * written target is deleted.  If the [CancellationSignal] is cancelled the target is deleted
+ * and [OperationCanceledException] is thrown.
+ *
+ * @param listener notified of the bytes transferred, not called for provider native transfers
+ * @param signal cancels the transfer between chunks
+ */
+class DocumentTransfer @JvmOverloads constructor(
+	private val context: Context,
+	private val listener: ProgressListener? = null,
+	private val signal: CancellationSignal? = null) {
+
+	fun interface ProgressListener {
+		/**
+		 * @param transferred bytes transferred so far
+		 * @param total total bytes to transfer, or -1 if unknown
+		 */
+		fun onProgress(transferred: Long, total: Long)
+	}
+
+	/**
+	 * Copy `source` into `targetDirectory`.
+	 *
+	 * @param displayName name of the copy, defaults to the name of the source
+	 * @return the copy, or null if failed
+	 * @throws IllegalArgumentException if `source` is a directory
+	 */
+	@JvmOverloads
+	fun copy(source: UsefulDocumentFile, targetDirectory: UsefulDocumentFile, displayName: String? = null): UsefulDocumentFile? {
+		val data = checkSource(source)
+		if (displayName == null || displayName == data.name)
+			nativeTransfer(source, data, targetDirectory, false)?.let { return it }
+		return streamTransfer(data, targetDirectory, displayName ?: data.name)
+	}
+
+	/**
+	 * Move `source` into `targetDirectory`.  When the provider can't move natively the source
+	 * is copied then deleted.  If the source can't be deleted the copy is, leaving the source
+	 * as it was.
+	 *
+	 * @param displayName name of the moved document, defaults to the name of the source
+	 * @return the moved document, or null if failed
+	 * @throws IllegalArgumentException if `source` is a directory
+	 */
+	@JvmOverloads
+	fun move(source: UsefulDocumentFile, targetDirectory: UsefulDocumentFile, displayName: String? = null): UsefulDocumentFile? {
+		val data = checkSource(source)
+		if (displayName == null || displayName == data.name)
+			nativeTransfer(source, data, targetDirectory, true)?.let { return it }
+
+		val target = streamTransfer(data, targetDirectory, displayName ?: data.name) ?: return null
+		if (!source.delete()) {
+			Log.w(TAG, "Failed to delete moved source ${source.uri}")
+			// A move must not leave two documents behind
+			target.delete()
+			return null
+		}
+		return target
+	}
+
+	/**
+	 * Read the data of `source` once for the transfer, into a private handle so the caller's
+	 * isn't left holding it, and reject directories before a target exists
+	 *
+	 * @return the source with its data cached
+	 */
+	private fun checkSource(source: UsefulDocumentFile): UsefulDocumentFile {
+		val data = UsefulDocumentFile(source.parentFile, context, source.uri)
+		data.cacheFileData(signal)
+		require(!data.isDirectory) { "Directories can't be transferred: ${source.uri}" }
+		return data
+	}
+
+	/**
+	 * @param data `source` with its data cached, see [checkSource]
+	 */
+	private fun nativeTransfer(source: UsefulDocumentFile, data: UsefulDocumentFile, targetDirectory: UsefulDocumentFile,
+							   move: Boolean): UsefulDocumentFile? {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N)
+			return null
+		if (!isContentScheme(source) || !isContentScheme(targetDirectory) ||
+			source.uri.authority != targetDirectory.uri.authority)
+			return null
+
+		val flag = if (move) DocumentsContract.Document.FLAG_SUPPORTS_MOVE else DocumentsContract.Document.FLAG_SUPPORTS_COPY
+		if (data.flags and flag == 0)
+			return null
+
+		signal?.throwIfCanceled()
+		val resolver = context.contentResolver
+		return try {
+			val result = if (move) {
+				val sourceParent = data.parentFile ?: return null
+				ProviderInstrumentation.moveDocument(resolver, source.uri, sourceParent.uri, targetDirectory.uri)
+			} else {
+				ProviderInstrumentation.copyDocument(resolver, source.uri, targetDirectory.uri)
+			} ?: return null
+
+			if (move)
+				source.invalidateCaches(source.uri)
+			targetDirectory.onChildCreated(result)
+			UsefulDocumentFile(targetDirectory, context, result)
+		} catch (e: Exception) {
+			// Providers may still refuse, fall back to copying the contents
+			Log.w(TAG, "Native transfer failed: $e")
+			null
+		}
+	}
+
+	private fun streamTransfer(source: UsefulDocumentFile, targetDirectory: UsefulDocumentFile, displayName: String): UsefulDocumentFile? {
+		signal?.throwIfCanceled()
+		val resolver = context.contentResolver
+		// Opened before the target is created, so an unreadable source creates nothing to remove
+		val input = try {
+			ProviderInstrumentation.openFileDescriptor(resolver, source.uri, "r")
+		} catch (e: IOException) {
+			Log.w(TAG, "Failed to open ${source.uri}: $e")
+			null
+		} ?: return null
+
+		ParcelFileDescriptor.AutoCloseInputStream(input).use { inStream ->
+			// File targets append the extension of the MIME type, the name already carries one
+			val mimeType = if (isContentScheme(targetDirectory)) source.type else null
+			val target = targetDirectory.createFile(mimeType, displayName) ?: return null
+
+			var success = false
+			try {
+				val output = ProviderInstrumentation.openFileDescriptor(resolver, target.uri, "w") ?: return null
+				ParcelFileDescriptor.AutoCloseOutputStream(output).use { outStream ->
+					val total = input.statSize
+					if (isRegularFile(input.fileDescriptor) && isRegularFile(output.fileDescriptor))
+						transferChannels(inStream, outStream, total)
+					else
+						transferStreams(inStream, outStream, total)
+					success = true
+				}
+			} catch (e: IOException) {
+				Log.w(TAG, "Failed to transfer ${source.uri}: $e")
+			} finally {
+				if (!success)
+					target.delete()
+				MetadataCache.invalidate(target.uri)
+			}
+			return if (success) target else null
+		}
+	}
+
+	private fun transferChannels(input: FileInputStream, output: FileOutputStream, total: Long) {
+		val inChannel = input.channel
+		val outChannel = output.channel
+		val size = inChannel.size()
+		val start = Util.startCopy(null)
+		var position = 0L
+		while (position < size) {
+			signal?.throwIfCanceled()
+			val transferred = inChannel.transferTo(position, minOf(CHANNEL_CHUNK, size - position), outChannel)
+			if (transferred <= 0)
+				break
+			position += transferred
+			listener?.onProgress(position, total)
+		}
+		Util.endCopy(null, position, start)
+		// Reported as a failure so the partial target is deleted rather than passed off as a copy
+		if (position != size)
+			throw IOException("Transferred $position of $size bytes")
+	}
+
+	private fun transferStreams(input: FileInputStream, output: FileOutputStream, total: Long) {
+		val buffer = Util.acquireCopyBuffer()
+		val start = Util.startCopy(null)
+		var transferred = 0L
+		try {
+			while (true) {
+				signal?.throwIfCanceled()
+				val n = input.read(buffer)
+				if (n == -1)
+					break
+				output.write(buffer, 0, n)
+				transferred += n
+				listener?.onProgress(transferred, total)
+			}
+		} finally {
+			Util.releaseCopyBuffer(buffer)
+		}
+		Util.endCopy(null, transferred, start)
+	}
+
+	private fun isContentScheme(file: UsefulDocumentFile) =
+		ContentResolver.SCHEME_CONTENT.equals(file.uri.scheme, ignoreCase = true)
+
+	private fun isRegularFile(fd: FileDescriptor): Boolean {
+		return try {
+			OsConstants.S_ISREG(Os.fstat(fd).st_mode)
+		} catch (e: ErrnoException) {
+			false
+		}
+	}
+
+	companion object {
+		private val TAG = DocumentTransfer::class.java.simpleName
+
+		/** Bytes handed to the kernel per transferTo, bounds the latency of progress and cancellation */
+		private const val CHANNEL_CHUNK = 8L * 1024 * 1024
+	}
+}
@@ -2,7 +2,6 @@ package com.anthonymandra.framework;
 
 import android.net.Uri;
 import android.provider.DocumentsContract;
-import android.text.TextUtils;
 
 import java.util.List;
 
@@ -99,10 +98,7 @@ public class DocumentUtil
 	@Nullable
 	public static String getRoot(@NonNull String documentId)
 	{
-		String[] parts = documentId.split(":");
-		if (parts.length > 0)
-			return parts[0];
-		return null;
+		return DocumentId.parse(documentId).getRoot();
 	}
 
 	/**
@@ -116,12 +112,15 @@ public class DocumentUtil
 	 * @see {@link #getDocumentId(Uri)}
 	 * @see {@link DocumentsContract#getDocumentId(Uri)}
 	 *
-	 * @return just the document portion of the id without the root
+	 * @return the root followed by the path within it, or just the root for a root id
 	 */
 	@Nullable
 	public static String[] getIdSegments(@NonNull String documentId)
 	{
-		return documentId.split(":");
+		DocumentId id = DocumentId.parse(documentId);
+		if (id.isRoot())
+			return new String[] { id.getRoot() };
+		return new String[] { id.getRoot(), id.getPath() };
 	}
 
 	/**
@@ -162,16 +161,32 @@ public class DocumentUtil
 	@Nullable
 	public static String[] getPathSegments(@NonNull String documentId)
 	{
-		String[] idParts = getIdSegments(documentId);
-		// If there's only one part it's a root
-		if (idParts.length <= 1)
+		DocumentId id = DocumentId.parse(documentId);
+		if (id.isRoot())
 		{
 			return null;
 		}
+		return id.getPath().split("/");
+	}
 
-		// The last part should be the path for both document and tree uris
-		String path = idParts[idParts.length-1];
-		return path.split("/");
+	/**
+	 * Given a typical document id this will return the id of the containing folder.
+	 * <p>
+	 * Example:
+	 * 0000-0000:folder/file.ext
+	 * will return '0000-0000:folder'
+	 *
+	 * @param documentId A valid document Id
+	 * @see {@link #getDocumentId(Uri)}
+	 * @see {@link DocumentsContract#getDocumentId(Uri)}
+	 *
+	 * @return the parent id or null if documentId is a root
+	 */
+	@Nullable
+	public static String getParentDocumentId(@NonNull String documentId)
+	{
+		DocumentId parent = DocumentId.parse(documentId).getParent();
+		return parent != null ? parent.toString() : null;
 	}
 
 	/**
@@ -193,6 +208,25 @@ public class DocumentUtil
 		return root + ":" + path;
 	}
 
+	/**
+	 * Given a typical folder document id this will create the id of a child.
+	 * <p>
+	 * Example:
+	 * 0000-0000:folder, file.ext
+	 * will return '0000-0000:folder/file.ext'
+	 * <p>
+	 * 0000-0000:, file.ext
+	 * will return '0000-0000:file.ext'
+	 *
+	 * @param parentId A valid document Id of a folder
+	 * @param name display name of the child
+	 * @return Document ID for the child
+	 */
+	public static String createChildDocumentId(@NonNull String parentId, @NonNull String name)
+	{
+		return DocumentId.parse(parentId).getChild(name).toString();
+	}
+
 	/**
 	 * Processes the URL encoded path of a document uri to be easy on the eyes
 	 * <p>
@@ -226,8 +260,8 @@ public class DocumentUtil
 	public static Uri getChildUri(Uri hierarchicalTreeUri, String filename)
 	{
 		String parentDocumentId = DocumentUtil.getTreeDocumentId(hierarchicalTreeUri);
-		String childDocumentId = parentDocumentId + "/" + filename;
-		return DocumentsContract.buildDocumentUriUsingTree(hierarchicalTreeUri, childDocumentId);
+		String childDocumentId = createChildDocumentId(parentDocumentId, filename);
+		return TreeUriFactory.forTree(hierarchicalTreeUri).buildDocumentUri(childDocumentId);
 	}
 
 	/**
@@ -247,18 +281,11 @@ public class DocumentUtil
 		if (documentId == null)
 			return null;
 
-		String root = getRoot(documentId);
-		if (root == null)
-			return null;
-
-		String[] parts = getPathSegments(documentId);
-		if (parts == null)
+		DocumentId neighborId = DocumentId.parse(documentId).getNeighbor(filename);
+		if (neighborId == null)
 			return null;
 
-		parts[parts.length-1] = filename; // replace the filename
-		String path = TextUtils.join("/", parts);
-		String neighborId = createNewDocumentId(root, path);
-		return DocumentsContract.buildDocumentUriUsingTree(hierarchicalTreeUri, neighborId);
+		return TreeUriFactory.forTree(hierarchicalTreeUri).buildDocumentUri(neighborId.toString());
 	}
 
 
@@ -278,14 +305,35 @@ public class DocumentUtil
 		if (documentId == null)
 			return null;
 
-		String root = getRoot(documentId);
-		if (root == null)
-			return null;
-
-		String[] parts = getPathSegments(documentId);
-		if (parts == null)
-			return null;
+		return DocumentId.parse(documentId).getName();
+	}
 
-		return parts[parts.length-1];
+	/**
+	 * Whether a uri is a directory's uri or lies beneath it.
+	 * <p>
+	 * Within a tree, descendants extend the encoded document id of the directory with an
+	 * encoded separator, or directly after the separator of a root id.  Descendants of a file
+	 * uri extend its path.
+	 * <p>
+	 * Example:
+	 * <p>
+	 * ...tree/0000-0000%3A/document/0000-0000%3Afolder
+	 * <p>contains
+	 * <p>
+	 * ...tree/0000-0000%3A/document/0000-0000%3Afolder%2Ffile.ext
+	 *
+	 * @param directory uri of a directory
+	 * @param uri uri to test
+	 * @return true if uri is directory or a descendant of it
+	 */
+	public static boolean isSameOrDescendant(@NonNull Uri directory, @NonNull Uri uri)
+	{
+		String self = directory.toString();
+		String other = uri.toString();
+		if (!other.startsWith(self))
+			return false;
+		if (other.length() == self.length() || self.endsWith(URL_COLON))
+			return true;
+		return other.charAt(self.length()) == '/' || other.startsWith(URL_SLASH, self.length());
 	}
 }
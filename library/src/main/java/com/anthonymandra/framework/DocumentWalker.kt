@@ -0,0 +1,145 @@
+package com.anthonymandra.framework
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+/**
+ * Recursively walks a tree of documents or files.
+ *
+ * Provider latency is paid per directory listing, so rather than listing serially the walker
+ * lists sibling subdirectories concurrently on a bounded pool of worker threads while the
+ * [Visitor] is invoked on the calling thread in a deterministic order.  Depth first, at most
+ * `parallelism` upcoming siblings are listed ahead at each level.  Breadth first, at most
+ * `parallelism` directories of the next level are listed ahead.  Each directory is listed
+ * with its metadata (see [UsefulDocumentFile.listFiles]) so the visited files have their
+ * data cached.
+ *
+ * The root itself is not visited, its children are at depth 1.
+ *
+ * @param order order in which files are visited
+ * @param maxDepth deepest level that will be visited, 1 visits only the children of the root
+ * @param parallelism number of worker threads listing directories
+ * @param filter files rejected by the filter are not visited, rejected directories are not listed
+ */
+class DocumentWalker @JvmOverloads constructor(
+	private val order: Order = Order.DEPTH_FIRST,
+	private val maxDepth: Int = Int.MAX_VALUE,
+	private val parallelism: Int = DEFAULT_PARALLELISM,
+	private val filter: Filter? = null) {
+
+	enum class Order {
+		/** Every directory is followed by its descendants before its next sibling */
+		DEPTH_FIRST,
+		/** Every level is completed before moving on to the next */
+		BREADTH_FIRST
+	}
+
+	fun interface Filter {
+		fun accept(file: UsefulDocumentFile): Boolean
+	}
+
+	fun interface Visitor {
+		fun visit(file: UsefulDocumentFile, depth: Int)
+	}
+
+	init {
+		require(maxDepth > 0) { "maxDepth must be positive" }
+		require(parallelism > 0) { "parallelism must be positive" }
+	}
+
+	/**
+	 * Walk the descendants of `root`, blocking until the walk is complete.  An exception thrown
+	 * by the visitor aborts the walk and is rethrown.
+	 */
+	fun walk(root: UsefulDocumentFile, visitor: Visitor) {
+		val executor = Executors.newFixedThreadPool(parallelism)
+		try {
+			val listing = list(executor, root)
+			when (order) {
+				Order.DEPTH_FIRST -> walkDepthFirst(executor, listing, 1, visitor)
+				Order.BREADTH_FIRST -> walkBreadthFirst(executor, listing, visitor)
+			}
+		} finally {
+			executor.shutdownNow()
+		}
+	}
+
+	private fun walkDepthFirst(executor: ExecutorService, listing: Future<Array<UsefulDocumentFile>>,
+							   depth: Int, visitor: Visitor) {
+		val children = await(listing)
+		val accepted = BooleanArray(children.size) { filter?.accept(children[it]) ?: true }
+
+		// Keep the listings of the next few sibling subdirectories in flight while descending,
+		// rather than queuing, and holding, one for every sibling of a wide directory
+		val pending = ArrayDeque<Pair<Int, Future<Array<UsefulDocumentFile>>>>()
+		var next = 0
+		fun prefetch() {
+			while (pending.size < parallelism && next < children.size) {
+				if (accepted[next] && depth < maxDepth && children[next].isDirectory)
+					pending.addLast(next to list(executor, children[next]))
+				next++
+			}
+		}
+
+		prefetch()
+		for (i in children.indices) {
+			if (!accepted[i])
+				continue
+			visitor.visit(children[i], depth)
+			if (pending.firstOrNull()?.first == i) {
+				val subdirectory = pending.removeFirst().second
+				prefetch()
+				walkDepthFirst(executor, subdirectory, depth + 1, visitor)
+			}
+		}
+	}
+
+	private fun walkBreadthFirst(executor: ExecutorService, listing: Future<Array<UsefulDocumentFile>>,
+								 visitor: Visitor) {
+		// Directories are listed in the order they are found, so one queue spans the levels.  At
+		// most `parallelism` listings are in flight, the rest of the level waits unlisted
+		val waiting = ArrayDeque<Pair<UsefulDocumentFile, Int>>()
+		val pending = ArrayDeque<Pair<Future<Array<UsefulDocumentFile>>, Int>>()
+		fun submit() {
+			while (pending.size < parallelism && waiting.isNotEmpty()) {
+				val (directory, depth) = waiting.removeFirst()
+				pending.addLast(list(executor, directory) to depth)
+			}
+		}
+
+		pending.addLast(listing to 1)
+		while (pending.isNotEmpty()) {
+			val (directory, depth) = pending.removeFirst()
+			submit()
+			for (child in await(directory)) {
+				if (filter?.accept(child) == false)
+					continue
+				visitor.visit(child, depth)
+				// Begin listing the next level while this one is still being visited
+				if (depth < maxDepth && child.isDirectory) {
+					waiting.addLast(child to depth + 1)
+					submit()
+				}
+			}
+		}
+	}
+
+	private fun list(executor: ExecutorService, directory: UsefulDocumentFile): Future<Array<UsefulDocumentFile>> {
+		return executor.submit(Callable { directory.listFiles(true) })
+	}
+
+	private fun <T> await(future: Future<T>): T {
+		try {
+			return future.get()
+		} catch (e: ExecutionException) {
+			throw e.cause ?: e
+		}
+	}
+
+	companion object {
+		const val DEFAULT_PARALLELISM = 4
+	}
+}
@@ -0,0 +1,45 @@
+package com.anthonymandra.framework
+
+import android.net.Uri
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Process-wide set of directories known to exist, keyed by their (tree) uri.  Path creation
+ * consults this before probing the provider, so after the first file in a folder the rest of
+ * the folder's files can be created without any existence queries.
+ *
+ * Deleting or renaming through [UsefulDocumentFile] and changes seen by a [TreeObserver]
+ * remove the affected directories.
+ */
+internal object KnownDirectories {
+	private const val MAX_DIRECTORIES = 4096
+
+	private val directories: MutableSet<Uri> = Collections.newSetFromMap(ConcurrentHashMap())
+
+	fun contains(directory: Uri) = directories.contains(directory)
+
+	fun add(directory: Uri) {
+		// Rather than tracking use, simply start over if an enormous tree was created
+		if (directories.size >= MAX_DIRECTORIES)
+			directories.clear()
+		directories.add(directory)
+	}
+
+	/**
+	 * Forget `directory` and every directory beneath it within the same tree
+	 */
+	fun invalidateTree(directory: Uri) {
+		if (directories.isEmpty())
+			return
+		invalidateIf { DocumentUtil.isSameOrDescendant(directory, it) }
+	}
+
+	fun invalidateIf(predicate: (Uri) -> Boolean) {
+		directories.removeAll(predicate)
+	}
+
+	fun clear() {
+		directories.clear()
+	}
+}
@@ -0,0 +1,324 @@
+package com.anthonymandra.framework
+
+import android.database.Cursor
+import android.provider.DocumentsContract
+import java.io.File
+import java.util.regex.Pattern
+
+/**
+ * Filters and sort order for a listing, see [UsefulDocumentFile.listFiles].
+ *
+ * The options are passed to the provider as the selection and sort order of the children
+ * query, but most providers, ExternalStorageProvider among them, ignore both.  Every row is
+ * therefore also checked against the raw cursor columns before any uri or [UsefulDocumentFile]
+ * is created, so a listing that keeps few of a large directory's children only allocates for
+ * those it keeps.  Without a sort order rows are checked as the listing reaches them, a sort
+ * first reads the whole cursor.
+ *
+ * Filters apply to directories as to files, so a MIME type prefix or a minimum size excludes
+ * directories.  Ranges are inclusive.
+ */
+class ListOptions private constructor(builder: Builder) {
+
+	enum class SortBy {
+		/** The order the provider returns */
+		NONE,
+		/** Display name, ignoring case */
+		NAME,
+		SIZE,
+		LAST_MODIFIED
+	}
+
+	val mimeTypePrefix: String? = builder.mimeTypePrefix
+	/** Display names must match the whole of the pattern */
+	val namePattern: Pattern? = builder.namePattern
+	val minSize: Long = builder.minSize
+	val maxSize: Long = builder.maxSize
+	val minLastModified: Long = builder.minLastModified
+	val maxLastModified: Long = builder.maxLastModified
+	val sortBy: SortBy = builder.sortBy
+	val descending: Boolean = builder.descending
+
+	private val nameGlob: String? = builder.nameGlob
+
+	class Builder {
+		internal var mimeTypePrefix: String? = null
+		internal var namePattern: Pattern? = null
+		internal var nameGlob: String? = null
+		internal var minSize = 0L
+		internal var maxSize = Long.MAX_VALUE
+		internal var minLastModified = 0L
+		internal var maxLastModified = Long.MAX_VALUE
+		internal var sortBy = SortBy.NONE
+		internal var descending = false
+
+		/**
+		 * @param prefix such as `image/`, a trailing `*` is ignored so `image/ *` also works
+		 */
+		fun mimeTypePrefix(prefix: String?) = apply {
+			mimeTypePrefix = prefix?.removeSuffix("*")?.takeIf { it.isNotEmpty() }
+		}
+
+		/**
+		 * Keep names matching `glob`, where `*` matches any run of characters and `?` any
+		 * single character, ignoring the case of ASCII letters only.  That is how SQL LIKE
+		 * compares, so a provider that applies the selection keeps the same names.  Replaces
+		 * any [nameRegex].
+		 */
+		fun nameGlob(glob: String?) = apply {
+			nameGlob = glob
+			namePattern = glob?.let { Pattern.compile(globToRegex(it), Pattern.CASE_INSENSITIVE) }
+		}
+
+		/**
+		 * Keep names matching the whole of `regex`.  Replaces any [nameGlob].
+		 */
+		fun nameRegex(regex: Pattern?) = apply {
+			nameGlob = null
+			namePattern = regex
+		}
+
+		fun nameRegex(regex: String) = nameRegex(Pattern.compile(regex))
+
+		fun sizeRange(min: Long, max: Long) = apply {
+			require(min <= max) { "min must not exceed max" }
+			minSize = min
+			maxSize = max
+		}
+
+		/**
+		 * @param min earliest modified time in milliseconds since the epoch
+		 * @param max latest modified time in milliseconds since the epoch
+		 */
+		fun lastModifiedRange(min: Long, max: Long) = apply {
+			require(min <= max) { "min must not exceed max" }
+			minLastModified = min
+			maxLastModified = max
+		}
+
+		@JvmOverloads
+		fun sortBy(sortBy: SortBy, descending: Boolean = false) = apply {
+			this.sortBy = sortBy
+			this.descending = descending
+		}
+
+		fun build() = ListOptions(this)
+	}
+
+	/**
+	 * Columns needed to filter and sort, plus those of the listing
+	 */
+	internal fun projection(withMetadata: Boolean): Array<String> {
+		if (withMetadata)
+			return UsefulDocumentFile.METADATA_COLUMNS
+		val columns = arrayListOf(DocumentsContract.Document.COLUMN_DOCUMENT_ID)
+		if (mimeTypePrefix != null)
+			columns.add(DocumentsContract.Document.COLUMN_MIME_TYPE)
+		if (namePattern != null || sortBy == SortBy.NAME)
+			columns.add(DocumentsContract.Document.COLUMN_DISPLAY_NAME)
+		if (hasSizeRange || sortBy == SortBy.SIZE)
+			columns.add(DocumentsContract.Document.COLUMN_SIZE)
+		if (hasLastModifiedRange || sortBy == SortBy.LAST_MODIFIED)
+			columns.add(DocumentsContract.Document.COLUMN_LAST_MODIFIED)
+		return columns.toTypedArray()
+	}
+
+	private val hasSizeRange get() = minSize > 0 || maxSize < Long.MAX_VALUE
+	private val hasLastModifiedRange get() = minLastModified > 0 || maxLastModified < Long.MAX_VALUE
+
+	/**
+	 * The filters as SQL, less a name regex which has no equivalent
+	 */
+	internal val selection: String?
+	internal val selectionArgs: Array<String>?
+
+	init {
+		val clauses = ArrayList<String>()
+		val args = ArrayList<String>()
+		mimeTypePrefix?.let {
+			clauses.add("${DocumentsContract.Document.COLUMN_MIME_TYPE} LIKE ? ESCAPE '\\'")
+			args.add(escapeLike(it) + "%")
+		}
+		nameGlob?.let {
+			clauses.add("${DocumentsContract.Document.COLUMN_DISPLAY_NAME} LIKE ? ESCAPE '\\'")
+			args.add(globToLike(it))
+		}
+		if (minSize > 0) {
+			clauses.add("${DocumentsContract.Document.COLUMN_SIZE} >= ?")
+			args.add(minSize.toString())
+		}
+		if (maxSize < Long.MAX_VALUE) {
+			clauses.add("${DocumentsContract.Document.COLUMN_SIZE} <= ?")
+			args.add(maxSize.toString())
+		}
+		if (minLastModified > 0) {
+			clauses.add("${DocumentsContract.Document.COLUMN_LAST_MODIFIED} >= ?")
+			args.add(minLastModified.toString())
+		}
+		if (maxLastModified < Long.MAX_VALUE) {
+			clauses.add("${DocumentsContract.Document.COLUMN_LAST_MODIFIED} <= ?")
+			args.add(maxLastModified.toString())
+		}
+		selection = if (clauses.isEmpty()) null else clauses.joinToString(" AND ")
+		selectionArgs = if (args.isEmpty()) null else args.toTypedArray()
+	}
+
+	internal val sortOrder: String? get() {
+		val column = when (sortBy) {
+			SortBy.NONE -> return null
+			SortBy.NAME -> DocumentsContract.Document.COLUMN_DISPLAY_NAME
+			SortBy.SIZE -> DocumentsContract.Document.COLUMN_SIZE
+			SortBy.LAST_MODIFIED -> DocumentsContract.Document.COLUMN_LAST_MODIFIED
+		}
+		return column + if (descending) " DESC" else " ASC"
+	}
+
+	/**
+	 * True if rows must all be read before the first is returned, otherwise each can be
+	 * checked with [accept] as it is reached
+	 */
+	internal val isSorted get() = sortBy != SortBy.NONE
+
+	/**
+	 * Indices of the columns the filters and sort read, in a cursor queried with [projection]
+	 */
+	internal class Columns(cursor: Cursor) {
+		private val type = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_MIME_TYPE)
+		private val name = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_DISPLAY_NAME)
+		private val size = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_SIZE)
+		private val modified = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED)
+
+		fun type(cursor: Cursor): String? = if (type < 0) null else cursor.getString(type)
+		fun name(cursor: Cursor): String? = if (name < 0) null else cursor.getString(name)
+		fun size(cursor: Cursor) = if (size < 0 || cursor.isNull(size)) 0L else cursor.getLong(size)
+		fun modified(cursor: Cursor) = if (modified < 0 || cursor.isNull(modified)) 0L else cursor.getLong(modified)
+	}
+
+	/**
+	 * @return true if the current row of `cursor` passes the filters
+	 */
+	internal fun accept(cursor: Cursor, columns: Columns): Boolean {
+		return accept({ columns.type(cursor) }, columns.name(cursor), columns.size(cursor), columns.modified(cursor))
+	}
+
+	/**
+	 * Filter and sort the rows of a children cursor queried with [projection] from the raw
+	 * columns, leaving the cursor before the first row.  Only needed to sort, see [isSorted].
+	 *
+	 * @return positions of the rows kept, in order
+	 */
+	internal fun select(cursor: Cursor): IntArray {
+		val columns = Columns(cursor)
+		val keys = SortKeys(cursor.count)
+		cursor.moveToPosition(-1)
+		while (cursor.moveToNext()) {
+			val name = columns.name(cursor)
+			val size = columns.size(cursor)
+			val modified = columns.modified(cursor)
+			if (accept({ columns.type(cursor) }, name, size, modified))
+				keys.add(cursor.position, name, size, modified)
+		}
+		cursor.moveToPosition(-1)
+		return keys.sorted()
+	}
+
+	/**
+	 * Filter and sort the entries of a directory, only reading what the options require
+	 *
+	 * @return names of the entries kept, in order
+	 */
+	internal fun select(directory: File): Array<String> {
+		val names = directory.list() ?: return emptyArray()
+		val stat = mimeTypePrefix != null || hasSizeRange || hasLastModifiedRange ||
+			sortBy == SortBy.SIZE || sortBy == SortBy.LAST_MODIFIED
+
+		val keys = SortKeys(names.size)
+		for ((i, name) in names.withIndex()) {
+			val file = if (stat) File(directory, name) else null
+			val size = file?.length() ?: 0L
+			val modified = file?.lastModified() ?: 0L
+			val type = {
+				if (file!!.isDirectory) DocumentsContract.Document.MIME_TYPE_DIR else UsefulDocumentFile.getTypeForName(name)
+			}
+			if (accept(type, name, size, modified))
+				keys.add(i, name, size, modified)
+		}
+		return keys.sorted().let { kept -> Array(kept.size) { names[kept[it]] } }
+	}
+
+	/**
+	 * @param type read only if a MIME type prefix is set
+	 */
+	private inline fun accept(type: () -> String?, name: String?, size: Long, modified: Long): Boolean {
+		if (size < minSize || size > maxSize)
+			return false
+		if (modified < minLastModified || modified > maxLastModified)
+			return false
+		if (namePattern != null && (name == null || !namePattern.matcher(name).matches()))
+			return false
+		if (mimeTypePrefix != null && type()?.startsWith(mimeTypePrefix) != true)
+			return false
+		return true
+	}
+
+	/**
+	 * Kept rows and the values they sort by
+	 */
+	private inner class SortKeys(capacity: Int) {
+		private val positions = IntArray(capacity)
+		private val names = if (sortBy == SortBy.NAME) arrayOfNulls<String>(capacity) else null
+		private val values = if (sortBy == SortBy.SIZE || sortBy == SortBy.LAST_MODIFIED) LongArray(capacity) else null
+		private var count = 0
+
+		fun add(position: Int, name: String?, size: Long, modified: Long) {
+			if (count == positions.size)
+				return // The source grew while being read
+			positions[count] = position
+			names?.set(count, name)
+			values?.set(count, if (sortBy == SortBy.SIZE) size else modified)
+			count++
+		}
+
+		private fun compare(a: Int, b: Int): Int {
+			val order = if (names != null)
+				String.CASE_INSENSITIVE_ORDER.compare(names[a] ?: "", names[b] ?: "")
+			else
+				values!![a].compareTo(values[b])
+			return if (descending) -order else order
+		}
+
+		fun sorted(): IntArray {
+			if (sortBy == SortBy.NONE || (1 until count).all { compare(it - 1, it) <= 0 })
+				return positions.copyOf(count)
+			// Stable, so ties keep the provider's order
+			val order = (0 until count).sortedWith { a, b -> compare(a, b) }
+			return IntArray(count) { positions[order[it]] }
+		}
+	}
+
+	private companion object {
+		fun globToRegex(glob: String): String {
+			val regex = StringBuilder()
+			var literal = StringBuilder()
+			for (c in glob) {
+				if (c == '*' || c == '?') {
+					if (literal.isNotEmpty()) {
+						regex.append(Pattern.quote(literal.toString()))
+						literal = StringBuilder()
+					}
+					regex.append(if (c == '*') ".*" else ".")
+				} else {
+					literal.append(c)
+				}
+			}
+			if (literal.isNotEmpty())
+				regex.append(Pattern.quote(literal.toString()))
+			return regex.toString()
+		}
+
+		fun escapeLike(value: String) =
+			value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_")
+
+		fun globToLike(glob: String) = escapeLike(glob).replace('*', '%').replace('?', '_')
+	}
+}
@@ -0,0 +1,165 @@
+package com.anthonymandra.framework
+
+import android.net.Uri
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Process-wide cache of document metadata keyed by document [Uri], shared by every
+ * [UsefulDocumentFile] handle.  A miss is filled by a single query of every column, so
+ * reading several properties of a document, or the same document through several handles,
+ * costs one resolver call per [ttlMillis].
+ *
+ * The cache is disabled until [maxSize] is set.  Once enabled, a handle may answer with what
+ * another handle read up to [ttlMillis] earlier, missing changes made by other apps in the
+ * meantime.  [UsefulDocumentFile.exists] always asks the provider rather than the cache.
+ *
+ * Entries are evicted least recently used beyond [maxSize] and expire after [ttlMillis].
+ * Creating, deleting and renaming through [UsefulDocumentFile] invalidates the affected
+ * entries.  Listings don't fill the cache, their children carry their own data instead.
+ *
+ * File uris are not cached since they are answered directly by the file system.
+ */
+object MetadataCache {
+	private class Entry(val data: FileData, val cachedAt: Long)
+
+	private val entries = LinkedHashMap<Uri, Entry>(16, 0.75f, true)
+	private val hits = AtomicLong()
+	private val misses = AtomicLong()
+	private val evictions = AtomicLong()
+
+	/**
+	 * Maximum number of documents held, least recently used are evicted beyond this.
+	 * 0, the default, disables the cache.
+	 */
+	@JvmStatic
+	var maxSize = 0
+		set(value) {
+			require(value >= 0) { "maxSize must not be negative" }
+			synchronized(entries) {
+				field = value
+				trim()
+			}
+		}
+
+	/**
+	 * Time an entry remains valid.
+	 */
+	@JvmStatic
+	@Volatile
+	var ttlMillis = 30_000L
+		set(value) {
+			require(value >= 0) { "ttlMillis must not be negative" }
+			field = value
+		}
+
+	@JvmStatic
+	val isEnabled: Boolean
+		get() = maxSize > 0
+
+	@JvmStatic
+	val hitCount: Long
+		get() = hits.get()
+
+	@JvmStatic
+	val missCount: Long
+		get() = misses.get()
+
+	@JvmStatic
+	val evictionCount: Long
+		get() = evictions.get()
+
+	@JvmStatic
+	val size: Int
+		get() = synchronized(entries) { entries.size }
+
+	internal fun now() = System.nanoTime()
+
+	internal fun isExpired(cachedAt: Long): Boolean {
+		return now() - cachedAt > TimeUnit.MILLISECONDS.toNanos(ttlMillis)
+	}
+
+	internal fun get(uri: Uri): FileData? {
+		synchronized(entries) {
+			val entry = entries[uri]
+			if (entry == null) {
+				misses.incrementAndGet()
+				return null
+			}
+			if (isExpired(entry.cachedAt)) {
+				entries.remove(uri)
+				misses.incrementAndGet()
+				return null
+			}
+			hits.incrementAndGet()
+			return entry.data
+		}
+	}
+
+	internal fun put(uri: Uri, data: FileData) {
+		synchronized(entries) {
+			if (maxSize == 0)
+				return
+			entries[uri] = Entry(data, now())
+			trim()
+		}
+	}
+
+	private fun trim() {
+		val iterator = entries.values.iterator()
+		while (entries.size > maxSize && iterator.hasNext()) {
+			iterator.next()
+			iterator.remove()
+			evictions.incrementAndGet()
+		}
+	}
+
+	/**
+	 * Discard the entry for `uri`.
+	 */
+	@JvmStatic
+	fun invalidate(uri: Uri) {
+		synchronized(entries) {
+			entries.remove(uri)
+		}
+	}
+
+	/**
+	 * Discard the entry for `uri` and every entry beneath it within the same tree.
+	 */
+	@JvmStatic
+	fun invalidateTree(uri: Uri) {
+		invalidateIf { key, _ -> DocumentUtil.isSameOrDescendant(uri, key) }
+	}
+
+	internal fun invalidateIf(predicate: (Uri, FileData) -> Boolean) {
+		synchronized(entries) {
+			val iterator = entries.entries.iterator()
+			while (iterator.hasNext()) {
+				val entry = iterator.next()
+				if (predicate(entry.key, entry.value.data))
+					iterator.remove()
+			}
+		}
+	}
+
+	/**
+	 * Discard all entries.
+	 */
+	@JvmStatic
+	fun clear() {
+		synchronized(entries) {
+			entries.clear()
+		}
+	}
+
+	/**
+	 * Reset the hit, miss and eviction counters.
+	 */
+	@JvmStatic
+	fun resetStats() {
+		hits.set(0)
+		misses.set(0)
+		evictions.set(0)
+	}
+}
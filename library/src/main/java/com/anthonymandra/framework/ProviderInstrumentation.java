@@ -0,0 +1,323 @@
+package com.anthonymandra.framework;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import java.io.FileNotFoundException;
+
+/**
+ * Every provider call the library makes passes through here, so a {@link Listener} sees the
+ * operation, authority and cost of each.  With no listener installed, the default, nothing is
+ * timed or measured and a call costs a couple of volatile reads beyond the call itself.
+ *
+ * @see ProviderStats
+ */
+public final class ProviderInstrumentation
+{
+	private static final String TAG = ProviderInstrumentation.class.getSimpleName();
+
+	public enum Operation
+	{
+		QUERY,
+		CREATE,
+		DELETE,
+		RENAME,
+		COPY,
+		MOVE,
+		OPEN
+	}
+
+	public interface Listener
+	{
+		/**
+		 * Called on the thread that made the call, keep it brief.
+		 *
+		 * @param authority provider authority, null for file uris
+		 * @param projection columns of a query, otherwise null
+		 * @param rows rows returned by a query, otherwise -1
+		 * @param bytes size of an opened document, otherwise -1
+		 * @param elapsedNanos duration of the call
+		 * @param success false if the call failed or returned nothing
+		 */
+		void onCall(Operation operation, String authority, String[] projection, int rows,
+		            long bytes, long elapsedNanos, boolean success);
+	}
+
+	/**
+	 * Makes queries and opens on behalf of the instrumentation.  Package-private, so tests can
+	 * substitute cursors and descriptors a provider can't produce and benchmarks can run
+	 * without a platform resolver.
+	 */
+	interface Transport
+	{
+		Cursor query(ContentResolver resolver, Uri uri, String[] projection, String selection,
+		             String[] selectionArgs, String sortOrder, CancellationSignal signal);
+
+		@TargetApi(Build.VERSION_CODES.O)
+		Cursor query(ContentResolver resolver, Uri uri, String[] projection, Bundle queryArgs,
+		             CancellationSignal signal);
+
+		ParcelFileDescriptor openFileDescriptor(ContentResolver resolver, Uri uri, String mode,
+		                                        CancellationSignal signal) throws FileNotFoundException;
+	}
+
+	/** Calls the resolver, the transport outside of tests and benchmarks */
+	static final Transport RESOLVER = new Transport()
+	{
+		@Override
+		public Cursor query(ContentResolver resolver, Uri uri, String[] projection, String selection,
+		                    String[] selectionArgs, String sortOrder, CancellationSignal signal)
+		{
+			return resolver.query(uri, projection, selection, selectionArgs, sortOrder, signal);
+		}
+
+		@Override
+		public Cursor query(ContentResolver resolver, Uri uri, String[] projection, Bundle queryArgs,
+		                    CancellationSignal signal)
+		{
+			return resolver.query(uri, projection, queryArgs, signal);
+		}
+
+		@Override
+		public ParcelFileDescriptor openFileDescriptor(ContentResolver resolver, Uri uri, String mode,
+		                                               CancellationSignal signal) throws FileNotFoundException
+		{
+			return resolver.openFileDescriptor(uri, mode, signal);
+		}
+	};
+
+	private static volatile Listener sListener;
+	private static volatile Transport sTransport = RESOLVER;
+
+	private ProviderInstrumentation() {}
+
+	/**
+	 * @param listener receives every provider call, or null to stop instrumenting
+	 */
+	public static void setListener(Listener listener)
+	{
+		sListener = listener;
+	}
+
+	public static Listener getListener()
+	{
+		return sListener;
+	}
+
+	/**
+	 * @param transport makes subsequent queries and opens, or null for {@link #RESOLVER}
+	 */
+	static void setTransport(Transport transport)
+	{
+		sTransport = transport != null ? transport : RESOLVER;
+	}
+
+	public static Cursor query(ContentResolver resolver, Uri uri, String[] projection,
+	                           String selection, String[] selectionArgs, String sortOrder)
+	{
+		return query(resolver, uri, projection, selection, selectionArgs, sortOrder, null);
+	}
+
+	/**
+	 * @param signal cancels the query, which then throws {@link android.os.OperationCanceledException}
+	 */
+	public static Cursor query(ContentResolver resolver, Uri uri, String[] projection,
+	                           String selection, String[] selectionArgs, String sortOrder,
+	                           CancellationSignal signal)
+	{
+		long start = start();
+		Cursor cursor = null;
+		try
+		{
+			cursor = sTransport.query(resolver, uri, projection, selection, selectionArgs, sortOrder, signal);
+			return cursor;
+		}
+		finally
+		{
+			if (start != 0)
+				end(start, Operation.QUERY, uri, projection, rowCount(cursor), -1, cursor != null);
+		}
+	}
+
+	/**
+	 * @param queryArgs arguments such as {@link ContentResolver#QUERY_ARG_LIMIT}
+	 * @param signal cancels the query, which then throws {@link android.os.OperationCanceledException}
+	 */
+	@TargetApi(Build.VERSION_CODES.O)
+	public static Cursor query(ContentResolver resolver, Uri uri, String[] projection,
+	                           Bundle queryArgs, CancellationSignal signal)
+	{
+		long start = start();
+		Cursor cursor = null;
+		try
+		{
+			cursor = sTransport.query(resolver, uri, projection, queryArgs, signal);
+			return cursor;
+		}
+		finally
+		{
+			if (start != 0)
+				end(start, Operation.QUERY, uri, projection, rowCount(cursor), -1, cursor != null);
+		}
+	}
+
+	public static Uri createDocument(ContentResolver resolver, Uri parentDocumentUri,
+	                                 String mimeType, String displayName) throws FileNotFoundException
+	{
+		long start = start();
+		Uri result = null;
+		try
+		{
+			result = DocumentsContract.createDocument(resolver, parentDocumentUri, mimeType, displayName);
+			return result;
+		}
+		finally
+		{
+			if (start != 0)
+				end(start, Operation.CREATE, parentDocumentUri, null, -1, -1, result != null);
+		}
+	}
+
+	public static boolean deleteDocument(ContentResolver resolver, Uri documentUri) throws FileNotFoundException
+	{
+		long start = start();
+		boolean result = false;
+		try
+		{
+			result = DocumentsContract.deleteDocument(resolver, documentUri);
+			return result;
+		}
+		finally
+		{
+			if (start != 0)
+				end(start, Operation.DELETE, documentUri, null, -1, -1, result);
+		}
+	}
+
+	public static Uri renameDocument(ContentResolver resolver, Uri documentUri, String displayName)
+			throws FileNotFoundException
+	{
+		long start = start();
+		Uri result = null;
+		try
+		{
+			result = DocumentsContract.renameDocument(resolver, documentUri, displayName);
+			return result;
+		}
+		finally
+		{
+			if (start != 0)
+				end(start, Operation.RENAME, documentUri, null, -1, -1, result != null);
+		}
+	}
+
+	@TargetApi(Build.VERSION_CODES.N)
+	public static Uri copyDocument(ContentResolver resolver, Uri sourceDocumentUri, Uri targetParentDocumentUri)
+			throws FileNotFoundException
+	{
+		long start = start();
+		Uri result = null;
+		try
+		{
+			result = DocumentsContract.copyDocument(resolver, sourceDocumentUri, targetParentDocumentUri);
+			return result;
+		}
+		finally
+		{
+			if (start != 0)
+				end(start, Operation.COPY, sourceDocumentUri, null, -1, -1, result != null);
+		}
+	}
+
+	@TargetApi(Build.VERSION_CODES.N)
+	public static Uri moveDocument(ContentResolver resolver, Uri sourceDocumentUri,
+	                               Uri sourceParentDocumentUri, Uri targetParentDocumentUri) throws FileNotFoundException
+	{
+		long start = start();
+		Uri result = null;
+		try
+		{
+			result = DocumentsContract.moveDocument(resolver, sourceDocumentUri, sourceParentDocumentUri, targetParentDocumentUri);
+			return result;
+		}
+		finally
+		{
+			if (start != 0)
+				end(start, Operation.MOVE, sourceDocumentUri, null, -1, -1, result != null);
+		}
+	}
+
+	public static ParcelFileDescriptor openFileDescriptor(ContentResolver resolver, Uri uri, String mode)
+			throws FileNotFoundException
+	{
+		return openFileDescriptor(resolver, uri, mode, null);
+	}
+
+	/**
+	 * @param signal cancels the open, which then throws {@link android.os.OperationCanceledException}
+	 */
+	public static ParcelFileDescriptor openFileDescriptor(ContentResolver resolver, Uri uri, String mode,
+	                                                      CancellationSignal signal) throws FileNotFoundException
+	{
+		long start = start();
+		ParcelFileDescriptor result = null;
+		try
+		{
+			result = sTransport.openFileDescriptor(resolver, uri, mode, signal);
+			return result;
+		}
+		finally
+		{
+			if (start != 0)
+				end(start, Operation.OPEN, uri, null, -1, result != null ? result.getStatSize() : -1, result != null);
+		}
+	}
+
+	/**
+	 * @return the start time if a listener will be notified, otherwise 0
+	 */
+	static long start()
+	{
+		return sListener != null ? System.nanoTime() : 0;
+	}
+
+	static void end(long start, Operation operation, Uri uri, String[] projection, int rows,
+	                long bytes, boolean success)
+	{
+		long elapsed = System.nanoTime() - start;
+		Listener listener = sListener;
+		if (listener == null)
+			return;
+		try
+		{
+			listener.onCall(operation, uri.getAuthority(), projection, rows, bytes, elapsed, success);
+		}
+		catch (RuntimeException e)
+		{
+			// A broken listener must not break file access
+			Log.w(TAG, "Listener failed: " + e);
+		}
+	}
+
+	private static int rowCount(Cursor cursor)
+	{
+		if (cursor == null)
+			return -1;
+		try
+		{
+			return cursor.getCount();
+		}
+		catch (RuntimeException e)
+		{
+			return -1;
+		}
+	}
+}
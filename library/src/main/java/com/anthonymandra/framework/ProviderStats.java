@@ -0,0 +1,227 @@
+package com.anthonymandra.framework;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records provider calls into per authority and operation counters and latency histograms,
+ * readable in process:
+ *
+ * <pre>
+ * ProviderStats stats = new ProviderStats();
+ * ProviderInstrumentation.setListener(stats);
+ * ...
+ * long p95 = stats.get(authority, Operation.QUERY).getPercentileNanos(0.95);
+ * </pre>
+ *
+ * Histograms use power of two buckets, so percentiles are accurate to within a factor of two.
+ */
+@SuppressWarnings("unused")
+public class ProviderStats implements ProviderInstrumentation.Listener
+{
+	/** Key for calls on file uris, which have no authority */
+	public static final String NO_AUTHORITY = "";
+
+	private static final ProviderInstrumentation.Operation[] OPERATIONS = ProviderInstrumentation.Operation.values();
+
+	private final Map<String, OperationStats[]> authorities = new ConcurrentHashMap<>();
+	private final OperationStats[] totals = newStats();
+
+	@Override
+	public void onCall(ProviderInstrumentation.Operation operation, String authority, String[] projection,
+	                   int rows, long bytes, long elapsedNanos, boolean success)
+	{
+		String key = authority != null ? authority : NO_AUTHORITY;
+		OperationStats[] stats = authorities.get(key);
+		if (stats == null)
+		{
+			OperationStats[] created = newStats();
+			stats = authorities.putIfAbsent(key, created);
+			if (stats == null)
+				stats = created;
+		}
+		stats[operation.ordinal()].record(rows, bytes, elapsedNanos, success);
+		totals[operation.ordinal()].record(rows, bytes, elapsedNanos, success);
+	}
+
+	/**
+	 * @return calls of {@code operation} across all authorities
+	 */
+	public OperationStats get(ProviderInstrumentation.Operation operation)
+	{
+		return totals[operation.ordinal()];
+	}
+
+	/**
+	 * @return calls of {@code operation} to {@code authority}, empty if there were none
+	 */
+	public OperationStats get(String authority, ProviderInstrumentation.Operation operation)
+	{
+		OperationStats[] stats = authorities.get(authority != null ? authority : NO_AUTHORITY);
+		return stats != null ? stats[operation.ordinal()] : new OperationStats();
+	}
+
+	/**
+	 * @return authorities that have been called
+	 */
+	public Set<String> getAuthorities()
+	{
+		return Collections.unmodifiableSet(authorities.keySet());
+	}
+
+	public void reset()
+	{
+		authorities.clear();
+		for (OperationStats stats : totals)
+			stats.reset();
+	}
+
+	private static OperationStats[] newStats()
+	{
+		OperationStats[] stats = new OperationStats[OPERATIONS.length];
+		for (int i = 0; i < stats.length; i++)
+			stats[i] = new OperationStats();
+		return stats;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, OperationStats[]> authority : authorities.entrySet())
+		{
+			for (ProviderInstrumentation.Operation operation : OPERATIONS)
+			{
+				OperationStats stats = authority.getValue()[operation.ordinal()];
+				if (stats.getCount() == 0)
+					continue;
+				sb.append(authority.getKey().isEmpty() ? "file" : authority.getKey())
+						.append(' ').append(operation).append(": ").append(stats).append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Counters and latency histogram of one operation
+	 */
+	public static class OperationStats
+	{
+		/** Bucket i holds durations below 2^i nanoseconds */
+		private static final int BUCKETS = 64;
+
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong rows = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+		private final AtomicLong nanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+		void record(int rowCount, long byteCount, long elapsedNanos, boolean success)
+		{
+			count.incrementAndGet();
+			if (!success)
+				failures.incrementAndGet();
+			if (rowCount > 0)
+				rows.addAndGet(rowCount);
+			if (byteCount > 0)
+				bytes.addAndGet(byteCount);
+			nanos.addAndGet(elapsedNanos);
+			buckets.incrementAndGet(bucket(elapsedNanos));
+
+			long max;
+			while (elapsedNanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, elapsedNanos)) { }
+		}
+
+		private static int bucket(long elapsedNanos)
+		{
+			return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, elapsedNanos)));
+		}
+
+		public long getCount()
+		{
+			return count.get();
+		}
+
+		public long getFailures()
+		{
+			return failures.get();
+		}
+
+		/**
+		 * @return total rows returned by queries
+		 */
+		public long getRows()
+		{
+			return rows.get();
+		}
+
+		/**
+		 * @return total size of opened documents
+		 */
+		public long getBytes()
+		{
+			return bytes.get();
+		}
+
+		public long getTotalNanos()
+		{
+			return nanos.get();
+		}
+
+		public long getMaxNanos()
+		{
+			return maxNanos.get();
+		}
+
+		public long getMeanNanos()
+		{
+			long n = count.get();
+			return n > 0 ? nanos.get() / n : 0;
+		}
+
+		/**
+		 * @param percentile fraction of calls, 0.5 for the median
+		 * @return upper bound of the duration within which {@code percentile} of calls completed
+		 */
+		public long getPercentileNanos(double percentile)
+		{
+			long n = count.get();
+			if (n == 0)
+				return 0;
+			long target = (long) Math.ceil(n * percentile);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++)
+			{
+				seen += buckets.get(i);
+				if (seen >= target)
+					return Math.min(i == BUCKETS - 1 ? Long.MAX_VALUE : 1L << i, getMaxNanos());
+			}
+			return getMaxNanos();
+		}
+
+		public void reset()
+		{
+			count.set(0);
+			failures.set(0);
+			rows.set(0);
+			bytes.set(0);
+			nanos.set(0);
+			maxNanos.set(0);
+			for (int i = 0; i < BUCKETS; i++)
+				buckets.set(i, 0);
+		}
+
+		@Override
+		public String toString()
+		{
+			return count.get() + " calls, " + failures.get() + " failed, mean " + getMeanNanos() / 1000 +
+					"us, p95 " + getPercentileNanos(0.95) / 1000 + "us, max " + getMaxNanos() / 1000 + "us";
+		}
+	}
+}
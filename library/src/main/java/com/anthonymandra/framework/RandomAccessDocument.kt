@@ -0,0 +1,173 @@
+package com.anthonymandra.framework
+
+import android.os.ParcelFileDescriptor
+import java.io.Closeable
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * Positional reads of a document backed by a small block cache with read-ahead.  Scattered
+ * reads, such as the header and IFD entries of a TIFF, cost a few preads of the descriptor
+ * rather than a linear scan of a stream, and neighbouring reads are served from the cache.
+ *
+ * Documents that are not seekable, such as those streamed through a pipe, are read into
+ * memory once and served from there.
+ *
+ * Instances are thread safe.  Close when done to release the descriptor.
+ *
+ * @see UsefulDocumentFile.openRandomAccess
+ */
+class RandomAccessDocument internal constructor(
+	descriptor: ParcelFileDescriptor,
+	private val blockSize: Int = DEFAULT_BLOCK_SIZE,
+	private val cacheBlocks: Int = DEFAULT_CACHE_BLOCKS,
+	private val readAheadBlocks: Int = DEFAULT_READ_AHEAD_BLOCKS) : Closeable {
+
+	private val stream = ParcelFileDescriptor.AutoCloseInputStream(descriptor)
+	private val channel: FileChannel?
+	private val contents: ByteArray?
+
+	private val blocks = object : LinkedHashMap<Long, ByteArray>(16, 0.75f, true) {
+		override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Long, ByteArray>?): Boolean {
+			return size > cacheBlocks
+		}
+	}
+
+	/**
+	 * Size of the document in bytes
+	 */
+	val size: Long
+
+	init {
+		require(blockSize > 0) { "blockSize must be positive" }
+		require(cacheBlocks > 0) { "cacheBlocks must be positive" }
+		require(readAheadBlocks >= 0) { "readAheadBlocks must not be negative" }
+
+		val statSize = descriptor.statSize
+		if (statSize >= 0) {
+			channel = stream.channel
+			contents = null
+			size = statSize
+		} else {
+			channel = null
+			contents = stream.use { Util.toByteArray(it) }
+			size = contents.size.toLong()
+		}
+	}
+
+	/**
+	 * Read up to `length` bytes at `position`.
+	 *
+	 * @return the bytes read, shorter than `length` only at the end of the document
+	 */
+	@Throws(IOException::class)
+	fun read(position: Long, length: Int): ByteArray {
+		require(position >= 0 && length >= 0) { "Invalid range" }
+		val available = (size - position).coerceIn(0, length.toLong()).toInt()
+		val result = ByteArray(available)
+		read(position, result, 0, available)
+		return result
+	}
+
+	/**
+	 * Read up to `length` bytes at `position` into `buffer`.
+	 *
+	 * @return the number of bytes read, or -1 if `position` is at or beyond the end
+	 * @throws IllegalArgumentException if `offset` and `length` don't lie within `buffer`
+	 */
+	@Synchronized
+	@Throws(IOException::class)
+	fun read(position: Long, buffer: ByteArray, offset: Int, length: Int): Int {
+		require(position >= 0) { "Invalid position" }
+		// Checked up front, a cached read would otherwise fail part way into the buffer
+		require(offset >= 0 && length >= 0 && length <= buffer.size - offset) { "Invalid range" }
+		if (position >= size)
+			return -1
+		val end = minOf(position + length, size)
+
+		if (contents != null) {
+			System.arraycopy(contents, position.toInt(), buffer, offset, (end - position).toInt())
+			return (end - position).toInt()
+		}
+
+		var current = position
+		var written = offset
+		while (current < end) {
+			val index = current / blockSize
+			val block = blocks[index] ?: load(index)
+			val blockOffset = (current - index * blockSize).toInt()
+			val count = minOf(block.size - blockOffset, (end - current).toInt())
+			if (count <= 0)
+				break // The document shrank since it was opened
+			System.arraycopy(block, blockOffset, buffer, written, count)
+			current += count
+			written += count
+		}
+		return written - offset
+	}
+
+	/**
+	 * Read `index` and the following read-ahead blocks in a single pread, caching each
+	 */
+	private fun load(index: Long): ByteArray {
+		val start = index * blockSize
+		val span = minOf((1L + readAheadBlocks) * blockSize, size - start).toInt()
+		val data = ByteBuffer.allocate(span)
+		while (data.hasRemaining()) {
+			if (channel!!.read(data, start + data.position()) < 0)
+				break
+		}
+
+		val read = data.position()
+		var first: ByteArray? = null
+		var blockStart = 0
+		var blockIndex = index
+		while (blockStart < read || first == null) {
+			val block = data.array().copyOfRange(blockStart, minOf(blockStart + blockSize, read))
+			if (first == null)
+				first = block
+			else if (blocks.containsKey(blockIndex))
+				break // Already cached, along with anything after it most likely
+			blocks[blockIndex] = block
+			blockStart += blockSize
+			blockIndex++
+		}
+		// The first block must be retrievable even if read-ahead evicted it
+		return first!!
+	}
+
+	override fun close() {
+		stream.close()
+		synchronized(this) {
+			blocks.clear()
+		}
+	}
+
+	companion object {
+		const val DEFAULT_BLOCK_SIZE = 16 * 1024
+		const val DEFAULT_CACHE_BLOCKS = 16
+		const val DEFAULT_READ_AHEAD_BLOCKS = 1
+
+		/**
+		 * Read up to `length` bytes at `position` with a single pread of exactly that range,
+		 * closing `descriptor`.  Bypasses the block cache, which one read can't benefit from.
+		 */
+		@Throws(IOException::class)
+		internal fun readOnce(descriptor: ParcelFileDescriptor, position: Long, length: Int): ByteArray {
+			require(position >= 0 && length >= 0) { "Invalid range" }
+			val statSize = descriptor.statSize
+			if (statSize < 0)
+				return RandomAccessDocument(descriptor).use { it.read(position, length) }
+
+			ParcelFileDescriptor.AutoCloseInputStream(descriptor).use { stream ->
+				val data = ByteBuffer.allocate((statSize - position).coerceIn(0, length.toLong()).toInt())
+				while (data.hasRemaining()) {
+					if (stream.channel.read(data, position + data.position()) < 0)
+						break
+				}
+				return if (data.hasRemaining()) data.array().copyOf(data.position()) else data.array()
+			}
+		}
+	}
+}
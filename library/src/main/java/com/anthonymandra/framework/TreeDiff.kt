@@ -0,0 +1,291 @@
+package com.anthonymandra.framework
+
+import android.content.Context
+import android.database.Cursor
+import android.net.Uri
+import android.os.CancellationSignal
+import android.provider.DocumentsContract
+import android.util.Log
+import com.anthonymandra.support.v4.provider.DocumentsContractApi21
+
+/**
+ * Compares a [TreeSnapshot] against the live tree, reporting what was added, removed or
+ * modified since the snapshot was captured.  Documents are matched by document id and
+ * compared by size and modified time.
+ *
+ * Each directory is compared by merging its snapshot children, stored sorted by document id,
+ * with a live children cursor.  The provider is asked to sort by document id, and if a row
+ * turns up out of order, as it does from most providers, the rest of that one directory is
+ * sorted in memory.  Changes are reported as they are found, so neither side of the tree is
+ * held in memory, except removals which are only certain once the directory's listing is done.
+ *
+ * With `skipUnchangedDirectories` a directory whose modified time matches the snapshot is not
+ * listed, nor is anything beneath it.  A directory's modified time only reflects its own
+ * entries, so this misses changes deeper in the tree and to the contents of files in place;
+ * use it where those are acceptable to miss, such as a quick refresh before a full diff.
+ *
+ * @param skipUnchangedDirectories skip the subtrees of directories whose modified time has not changed
+ * @param reportUnchanged also report documents that did not change
+ * @param signal cancels the diff, which then throws [android.os.OperationCanceledException]
+ */
+class TreeDiff @JvmOverloads constructor(
+	private val snapshot: TreeSnapshot,
+	private val skipUnchangedDirectories: Boolean = false,
+	private val reportUnchanged: Boolean = false,
+	private val signal: CancellationSignal? = null) {
+
+	enum class Type {
+		ADDED,
+		REMOVED,
+		MODIFIED,
+		UNCHANGED,
+		/**
+		 * A directory that could not be listed, now or when the snapshot was captured (see
+		 * [TreeSnapshot.isListed]), so nothing beneath it was compared.  Its values are those of
+		 * the live document, or of the snapshot for the root.
+		 */
+		FAILED
+	}
+
+	/**
+	 * A document that differs, or not, between the snapshot and the live tree.  The values are
+	 * those of the live document, or of the snapshot for [Type.REMOVED].
+	 *
+	 * @param parentDocumentId empty only for a [Type.FAILED] root
+	 * @param snapshotIndex index of the document in the snapshot, -1 if [Type.ADDED]
+	 */
+	class Change internal constructor(
+		private val uriFactory: TreeUriFactory,
+		val type: Type,
+		val documentId: String,
+		val parentDocumentId: String,
+		val snapshotIndex: Int,
+		val name: String?,
+		val mimeType: String?,
+		val size: Long,
+		val lastModified: Long) {
+
+		val isDirectory get() = DocumentsContract.Document.MIME_TYPE_DIR == mimeType
+
+		val uri: Uri get() = uriFactory.buildDocumentUri(documentId)
+
+		override fun toString() = "$type $documentId"
+	}
+
+	fun interface Listener {
+		/**
+		 * Called on the diffing thread in depth first order.  A directory is reported before
+		 * its descendants.
+		 */
+		fun onChange(change: Change)
+	}
+
+	/**
+	 * A child from the live listing
+	 */
+	private class Row(val documentId: String, val name: String?, val mimeType: String?, val size: Long,
+					  val lastModified: Long) {
+		val isDirectory get() = DocumentsContract.Document.MIME_TYPE_DIR == mimeType
+	}
+
+	/**
+	 * A directory to compare, present in both at `index` or only live at -1
+	 *
+	 * @param row the live listing of the directory, null for the root
+	 */
+	private class Directory(val index: Int, val documentId: String, val parentId: String, val row: Row?)
+
+	private val uriFactory = TreeUriFactory.forTree(snapshot.treeUri)
+
+	/**
+	 * Diff the tree beneath the snapshot root, blocking until complete.  Directories that can't
+	 * be listed are reported as [Type.FAILED].
+	 */
+	fun run(context: Context, listener: Listener) {
+		val pending = ArrayDeque<Directory>()
+		pending.addLast(Directory(0, snapshot.documentId(0), "", null))
+		while (pending.isNotEmpty()) {
+			signal?.throwIfCanceled()
+			compareChildren(context, pending.removeLast(), pending, listener)
+		}
+	}
+
+	private fun compareChildren(context: Context, directory: Directory, pending: ArrayDeque<Directory>,
+								listener: Listener) {
+		val directoryId = directory.documentId
+		// Without the snapshot's children every live child would pass for added
+		if (directory.index >= 0 && !snapshot.isListed(directory.index)) {
+			failed(directory, listener)
+			return
+		}
+		val cursor = DocumentsContractApi21.queryChildren(context, uriFactory.buildDocumentUri(directoryId), COLUMNS,
+			null, null, DocumentsContract.Document.COLUMN_DOCUMENT_ID, signal)
+		if (cursor == null) {
+			Log.w(TAG, "Failed to list $directoryId")
+			failed(directory, listener)
+			return
+		}
+		cursor.use {
+			var stored: Iterator<Int> = if (directory.index < 0) IntRange.EMPTY.iterator()
+				else snapshot.children(directory.index).iterator()
+			var live = cursorRows(cursor)
+			// A stored child missing so far may yet turn up further down an unsorted cursor
+			val missing = ArrayList<Int>()
+			var sorted = false
+			var previousId: String? = null
+
+			var index = next(stored)
+			var row = next(live)
+			while (index >= 0 || row != null) {
+				if (!sorted && row != null) {
+					if (previousId != null && row.documentId < previousId) {
+						// Sort the rest of the listing and merge it with what is left of the
+						// snapshot, including the children that had passed for removed, which
+						// all precede `index`
+						val rest = ArrayList<Int>(missing)
+						if (index >= 0)
+							rest.add(index)
+						while (stored.hasNext())
+							rest.add(stored.next())
+						missing.clear()
+						stored = rest.iterator()
+						live = sortedRows(cursor, row)
+						sorted = true
+						index = next(stored)
+						row = next(live)
+						continue
+					}
+					previousId = row.documentId
+				}
+
+				val order = when {
+					index < 0 -> 1
+					row == null -> -1
+					else -> snapshot.documentId(index).compareTo(row.documentId)
+				}
+				if (order < 0) {
+					missing.add(index)
+				} else if (order > 0) {
+					added(row!!, directoryId, pending, listener)
+				} else {
+					compare(index, row!!, directoryId, pending, listener)
+				}
+
+				if (order <= 0)
+					index = next(stored)
+				if (order >= 0)
+					row = next(live)
+			}
+
+			for (child in missing)
+				removed(child, directoryId, listener)
+		}
+	}
+
+	private fun failed(directory: Directory, listener: Listener) {
+		listener.onChange(directory.row?.let { change(Type.FAILED, it, directory.parentId, directory.index) }
+			?: snapshotChange(Type.FAILED, directory.index, directory.parentId))
+	}
+
+	private fun compare(index: Int, row: Row, parentId: String, pending: ArrayDeque<Directory>,
+						listener: Listener) {
+		if (snapshot.isDirectory(index) != row.isDirectory) {
+			removed(index, parentId, listener)
+			added(row, parentId, pending, listener)
+			return
+		}
+
+		val modified = row.lastModified != snapshot.lastModified(index) ||
+			!row.isDirectory && row.size != snapshot.size(index)
+		if (modified || reportUnchanged)
+			listener.onChange(change(if (modified) Type.MODIFIED else Type.UNCHANGED, row, parentId, index))
+
+		if (!row.isDirectory)
+			return
+		if (skipUnchangedDirectories && !modified && row.lastModified > 0 && snapshot.isListed(index)) {
+			if (reportUnchanged)
+				reportSubtree(index, Type.UNCHANGED, listener)
+		} else {
+			pending.addLast(Directory(index, row.documentId, parentId, row))
+		}
+	}
+
+	private fun added(row: Row, parentId: String, pending: ArrayDeque<Directory>, listener: Listener) {
+		listener.onChange(change(Type.ADDED, row, parentId, -1))
+		if (row.isDirectory)
+			pending.addLast(Directory(-1, row.documentId, parentId, row))
+	}
+
+	private fun removed(index: Int, parentId: String, listener: Listener) {
+		listener.onChange(snapshotChange(Type.REMOVED, index, parentId))
+		reportSubtree(index, Type.REMOVED, listener)
+	}
+
+	/**
+	 * Report everything beneath `directory` from the snapshot alone
+	 */
+	private fun reportSubtree(directory: Int, type: Type, listener: Listener) {
+		val directories = ArrayDeque<Int>()
+		directories.addLast(directory)
+		while (directories.isNotEmpty()) {
+			val parent = directories.removeLast()
+			val parentId = snapshot.documentId(parent)
+			for (child in snapshot.children(parent)) {
+				listener.onChange(snapshotChange(type, child, parentId))
+				if (snapshot.childCount(child) > 0)
+					directories.addLast(child)
+			}
+		}
+	}
+
+	private fun change(type: Type, row: Row, parentId: String, index: Int) =
+		Change(uriFactory, type, row.documentId, parentId, index, row.name, row.mimeType, row.size, row.lastModified)
+
+	private fun snapshotChange(type: Type, index: Int, parentId: String) =
+		Change(uriFactory, type, snapshot.documentId(index), parentId, index, snapshot.name(index),
+			snapshot.mimeType(index), snapshot.size(index), snapshot.lastModified(index))
+
+	companion object {
+		private val TAG = TreeDiff::class.java.simpleName
+
+		private val COLUMNS = arrayOf(
+			DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+			DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+			DocumentsContract.Document.COLUMN_MIME_TYPE,
+			DocumentsContract.Document.COLUMN_SIZE,
+			DocumentsContract.Document.COLUMN_LAST_MODIFIED)
+
+		private fun readRow(cursor: Cursor): Row? {
+			val id = cursor.getString(0) ?: return null
+			return Row(id, cursor.getString(1), cursor.getString(2),
+				if (cursor.isNull(3)) 0 else cursor.getLong(3),
+				if (cursor.isNull(4)) 0 else cursor.getLong(4))
+		}
+
+		private fun cursorRows(cursor: Cursor): Iterator<Row> = iterator {
+			while (cursor.moveToNext())
+				readRow(cursor)?.let { yield(it) }
+		}
+
+		/**
+		 * The sort fallback, holding the rest of a single directory in memory
+		 *
+		 * @param current the row at the cursor's position, already read
+		 */
+		private fun sortedRows(cursor: Cursor, current: Row): Iterator<Row> {
+			val rows = ArrayList<Row>()
+			rows.add(current)
+			while (cursor.moveToNext())
+				readRow(cursor)?.let { rows.add(it) }
+			rows.sortBy { it.documentId }
+			return rows.iterator()
+		}
+
+		/**
+		 * @return the next stored index, or -1 once exhausted
+		 */
+		private fun next(stored: Iterator<Int>) = if (stored.hasNext()) stored.next() else -1
+
+		private fun next(live: Iterator<Row>) = if (live.hasNext()) live.next() else null
+	}
+}
@@ -0,0 +1,149 @@
+package com.anthonymandra.framework
+
+import android.content.Context
+import android.database.ContentObserver
+import android.net.Uri
+import android.os.Handler
+import android.provider.DocumentsContract
+import java.io.Closeable
+
+/**
+ * Watches a document tree for changes made outside of this library and incrementally
+ * invalidates what [MetadataCache], [DirectoryIndex] and [DirectoryStatsCache] hold for it.
+ * A change to a directory only drops that directory's listing, the metadata of the directory
+ * and its direct children, and the stats of the directory and its ancestors, so a refresh
+ * re-queries what changed rather than the whole tree.
+ *
+ * The observer is registered on the children uri of the tree root (see
+ * [DocumentsContract.buildChildDocumentsUriUsingTree]) and, since providers such as
+ * ExternalStorageProvider notify on non-tree children uris, on the document uris of the
+ * authority.  Changes outside of the tree are ignored.
+ *
+ * Membership and parents are read from the document ids, which only works for providers whose
+ * ids are paths, as with ExternalStorageProvider.  Those are recognised by the authority or by
+ * a tree id that ends in a root separator or contains a path separator.  For any other tree
+ * every change to the authority invalidates the whole tree instead, since an opaque id can't
+ * be placed without asking the provider.
+ *
+ * Note that providers generally only deliver notifications for directories that have an open
+ * children cursor.
+ *
+ * @see UsefulDocumentFile.watch
+ */
+class TreeObserver private constructor(
+	private val context: Context,
+	private val treeUri: Uri,
+	handler: Handler?,
+	private val listener: Listener?) : Closeable {
+
+	fun interface Listener {
+		/**
+		 * @param document the changed document within the tree, or null if the provider did
+		 * not specify or the tree's ids are opaque, in which case everything under the tree
+		 * was invalidated
+		 */
+		fun onChanged(document: Uri?)
+	}
+
+	private val authority = treeUri.authority
+	private val treeId = DocumentsContract.getTreeDocumentId(treeUri)
+	private val hierarchical = DocumentUtil.isExternalStorageDocument(treeUri) ||
+		treeId.endsWith(":") || treeId.contains('/')
+
+	private val observer = object : ContentObserver(handler) {
+		override fun onChange(selfChange: Boolean) {
+			onChange(selfChange, null)
+		}
+
+		override fun onChange(selfChange: Boolean, uri: Uri?) {
+			handleChange(uri)
+		}
+	}
+
+	init {
+		val resolver = context.contentResolver
+		resolver.registerContentObserver(
+			DocumentsContract.buildChildDocumentsUriUsingTree(treeUri, treeId), true, observer)
+		resolver.registerContentObserver(
+			Uri.Builder().scheme(treeUri.scheme).authority(authority).appendPath(PATH_DOCUMENT).build(),
+			true, observer)
+	}
+
+	private fun handleChange(uri: Uri?) {
+		val documentId = uri?.let { DocumentUtil.getDocumentId(it) }
+		if (uri == null || documentId == null || !hierarchical) {
+			MetadataCache.invalidateIf { key, _ -> isWithinTree(key) }
+			DirectoryIndex.invalidateIf { isWithinTree(it) }
+			KnownDirectories.invalidateIf { isWithinTree(it) }
+			DirectoryStatsCache.invalidateIf { isWithinTree(it) }
+			listener?.onChanged(null)
+			return
+		}
+
+		if (authority != uri.authority || !isWithinTree(documentId))
+			return
+
+		val directoryId = if (PATH_CHILDREN == uri.lastPathSegment) documentId
+			else DocumentUtil.getParentDocumentId(documentId) ?: documentId
+
+		if (directoryId != documentId)
+			MetadataCache.invalidateIf { key, _ -> authority == key.authority && documentId == DocumentUtil.getDocumentId(key) }
+		// The directory itself, for modified time, and its children
+		MetadataCache.invalidateIf { key, data ->
+			authority == key.authority &&
+				(directoryId == DocumentUtil.getDocumentId(key) ||
+					(data.parent != null && directoryId == DocumentUtil.getDocumentId(data.parent)))
+		}
+		DirectoryIndex.invalidateIf { authority == it.authority && directoryId == DocumentUtil.getDocumentId(it) }
+		// A child directory, and so everything beneath it, may have been removed
+		KnownDirectories.invalidateIf {
+			authority == it.authority && DocumentUtil.getDocumentId(it)?.let { id ->
+				id != directoryId && isWithin(directoryId, id) } == true
+		}
+		DirectoryStatsCache.invalidate(DocumentsContract.buildDocumentUriUsingTree(treeUri, directoryId))
+
+		listener?.onChanged(DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId))
+	}
+
+	private fun isWithinTree(key: Uri): Boolean {
+		if (authority != key.authority)
+			return false
+		if (treeId == DocumentUtil.getTreeDocumentId(key))
+			return true
+		val documentId = DocumentUtil.getDocumentId(key) ?: return false
+		return hierarchical && isWithinTree(documentId)
+	}
+
+	private fun isWithinTree(documentId: String) = isWithin(treeId, documentId)
+
+	private fun isWithin(directoryId: String, documentId: String): Boolean {
+		return documentId == directoryId || documentId.startsWith(
+			if (directoryId.endsWith(":")) directoryId else "$directoryId/")
+	}
+
+	/**
+	 * Stop watching the tree.
+	 */
+	override fun close() {
+		context.contentResolver.unregisterContentObserver(observer)
+	}
+
+	companion object {
+		private const val PATH_DOCUMENT = "document"
+		private const val PATH_CHILDREN = "children"
+
+		/**
+		 * Begin watching the tree containing `uri`.
+		 *
+		 * @param uri a tree uri or any document uri within a tree
+		 * @param handler handler to deliver changes on, or null for the binder thread
+		 * @param listener notified after the caches have been invalidated
+		 */
+		@JvmStatic
+		@JvmOverloads
+		fun watch(context: Context, uri: Uri, handler: Handler? = null, listener: Listener? = null): TreeObserver {
+			require(DocumentUtil.hasTreeDocumentId(uri)) { "Not a tree uri: $uri" }
+			return TreeObserver(context, uri, handler, listener)
+		}
+	}
+}
@@ -0,0 +1,466 @@
+package com.anthonymandra.framework
+
+import android.content.Context
+import android.content.Intent
+import android.content.pm.PackageManager
+import android.database.Cursor
+import android.net.Uri
+import android.os.CancellationSignal
+import android.os.OperationCanceledException
+import android.provider.DocumentsContract
+import android.util.Log
+import com.anthonymandra.support.v4.provider.DocumentsContractApi21
+import java.io.BufferedOutputStream
+import java.io.Closeable
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * The last known state of a document tree, stored in a compact binary file so it can be shown
+ * at cold start without listing the tree, then reconciled in the background.
+ *
+ * Documents are addressed by index, the root being 0.  The children of a directory occupy a
+ * contiguous range of indices sorted by document id, see [children].  A directory that couldn't
+ * be listed during the capture has no children and is not [isListed], so it can be told apart
+ * from an empty one.  The file is mapped rather than parsed, so opening costs the same for any
+ * size of tree and a document's fields are only decoded when asked for.
+ *
+ * Layout, big endian:
+ * ```
+ * header   magic, version, captured at, tree uri
+ * records  one per document: parent, flags, mime index, size, last modified, document id, name
+ * mimes    the distinct MIME types, indexed by the records
+ * index    one per document: record offset, first child, child count or -1 if not listed
+ * trailer  index offset, document count, mimes offset, magic
+ * ```
+ * Strings are UTF-8 prefixed with an unsigned short length.
+ *
+ * Instances are thread safe.  Close to release the file, any [UsefulDocumentFile] already
+ * created remains valid.
+ *
+ * @see capture
+ */
+class TreeSnapshot private constructor(private val channel: FileChannel) : Closeable {
+	private val buffer: ByteBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+
+	/** Tree uri the snapshot was captured from */
+	val treeUri: Uri
+
+	/** Time the capture started, in milliseconds since the epoch */
+	val capturedAt: Long
+
+	/** Number of documents, including the root */
+	val count: Int
+
+	private val indexOffset: Int
+	private val mimeTypes: Array<String?>
+	private val uriFactory: TreeUriFactory
+
+	init {
+		if (buffer.capacity() < HEADER_SIZE + TRAILER_SIZE || buffer.getInt(0) != MAGIC)
+			throw IOException("Not a tree snapshot")
+		if (buffer.getInt(4) != VERSION)
+			throw IOException("Unsupported snapshot version " + buffer.getInt(4))
+		val trailer = buffer.capacity() - TRAILER_SIZE
+		if (buffer.getInt(trailer + 12) != MAGIC)
+			throw IOException("Incomplete tree snapshot")
+
+		capturedAt = buffer.getLong(8)
+		treeUri = Uri.parse(string(16))
+		indexOffset = buffer.getInt(trailer)
+		count = buffer.getInt(trailer + 4)
+
+		var position = buffer.getInt(trailer + 8)
+		mimeTypes = arrayOfNulls(buffer.getInt(position))
+		position += 4
+		for (i in mimeTypes.indices) {
+			mimeTypes[i] = string(position)
+			position += 2 + stringLength(position)
+		}
+		uriFactory = TreeUriFactory.forTree(treeUri)
+	}
+
+	fun documentId(index: Int): String = string(record(index) + RECORD_FIXED_SIZE)
+
+	fun name(index: Int): String {
+		val id = record(index) + RECORD_FIXED_SIZE
+		return string(id + 2 + stringLength(id))
+	}
+
+	/**
+	 * @return index of the directory containing `index`, -1 for the root
+	 */
+	fun parent(index: Int): Int = buffer.getInt(record(index))
+
+	/**
+	 * @return the [DocumentsContract.Document.COLUMN_FLAGS] of the document
+	 */
+	fun flags(index: Int): Int = buffer.getInt(record(index) + 4)
+
+	/**
+	 * @return the raw MIME type, [DocumentsContract.Document.MIME_TYPE_DIR] for directories
+	 */
+	fun mimeType(index: Int): String? {
+		val mime = buffer.getInt(record(index) + 8)
+		return if (mime < 0) null else mimeTypes[mime]
+	}
+
+	fun size(index: Int): Long = buffer.getLong(record(index) + 12)
+
+	fun lastModified(index: Int): Long = buffer.getLong(record(index) + 20)
+
+	fun isDirectory(index: Int) = DocumentsContract.Document.MIME_TYPE_DIR == mimeType(index)
+
+	/**
+	 * @return number of children, or [NOT_LISTED] for a directory that couldn't be listed
+	 */
+	fun childCount(index: Int): Int = buffer.getInt(entry(index) + 8)
+
+	/**
+	 * @return false for a directory whose listing failed during the capture, whose children
+	 * are unknown rather than none
+	 */
+	fun isListed(index: Int) = childCount(index) != NOT_LISTED
+
+	/**
+	 * @return indices of the children of `index`, in document id order, empty if not listed
+	 */
+	fun children(index: Int): IntRange {
+		val first = buffer.getInt(entry(index) + 4)
+		return first until first + maxOf(childCount(index), 0)
+	}
+
+	/**
+	 * @return index of the child of `parent` with `documentId`, or -1 if there is none
+	 */
+	fun find(parent: Int, documentId: String): Int {
+		val children = children(parent)
+		var low = children.first
+		var high = children.last
+		while (low <= high) {
+			val mid = (low + high) ushr 1
+			val order = documentId(mid).compareTo(documentId)
+			when {
+				order < 0 -> low = mid + 1
+				order > 0 -> high = mid - 1
+				else -> return mid
+			}
+		}
+		return -1
+	}
+
+	fun uri(index: Int): Uri = uriFactory.buildDocumentUri(documentId(index))
+
+	/**
+	 * @return a document with its cached data populated from the snapshot, so it can be
+	 * displayed without a query.  The data is as old as the snapshot.
+	 */
+	fun file(context: Context, index: Int): UsefulDocumentFile {
+		return file(context, index, canRead(context), canWrite(context))
+	}
+
+	/**
+	 * @return the children of `index` in document id order, populated as by [file]
+	 */
+	fun listFiles(context: Context, index: Int): Array<UsefulDocumentFile> {
+		val readPerm = canRead(context)
+		val writePerm = canWrite(context)
+		val children = children(index)
+		return Array(children.count()) { file(context, children.first + it, readPerm, writePerm) }
+	}
+
+	private fun file(context: Context, index: Int, readPerm: Boolean, writePerm: Boolean): UsefulDocumentFile {
+		val uri = uri(index)
+		val parent = parent(index)
+		val data = FileData.fromColumns(uri, if (parent < 0) null else uri(parent), mimeType(index), flags(index),
+			lastModified(index), size(index), name(index), readPerm, writePerm)
+		return UsefulDocumentFile(null, context, uri, data)
+	}
+
+	private fun canRead(context: Context) =
+		context.checkCallingOrSelfUriPermission(treeUri, Intent.FLAG_GRANT_READ_URI_PERMISSION) == PackageManager.PERMISSION_GRANTED
+
+	private fun canWrite(context: Context) =
+		context.checkCallingOrSelfUriPermission(treeUri, Intent.FLAG_GRANT_WRITE_URI_PERMISSION) == PackageManager.PERMISSION_GRANTED
+
+	override fun close() {
+		channel.close()
+	}
+
+	private fun entry(index: Int): Int {
+		if (index < 0 || index >= count)
+			throw IndexOutOfBoundsException("Document $index of $count")
+		return indexOffset + index * INDEX_ENTRY_SIZE
+	}
+
+	private fun record(index: Int) = buffer.getInt(entry(index))
+
+	private fun stringLength(position: Int) = buffer.getShort(position).toInt() and 0xffff
+
+	private fun string(position: Int): String {
+		val bytes = ByteArray(stringLength(position))
+		val view = buffer.duplicate()
+		view.position(position + 2)
+		view.get(bytes)
+		return String(bytes, Charsets.UTF_8)
+	}
+
+	/**
+	 * Writes a snapshot one directory at a time.  Records stream to a temporary file beside the
+	 * target and only the index is held in memory, about 12 bytes a document.  The target is
+	 * replaced once the snapshot is complete.
+	 */
+	internal class Writer(private val target: File, treeUri: Uri, capturedAt: Long) : Closeable {
+		private val temp = File(target.path + ".tmp")
+		private val output = FileOutputStream(temp)
+		private val stream = DataOutputStream(BufferedOutputStream(output, 64 * 1024))
+		private val mimes = LinkedHashMap<String, Int>()
+		private var offsets = IntArray(1024)
+		private var firstChildren = IntArray(1024)
+		private var childCounts = IntArray(1024)
+		private var finished = false
+
+		/** Number of documents written */
+		var count = 0
+			private set
+
+		init {
+			stream.writeInt(MAGIC)
+			stream.writeInt(VERSION)
+			stream.writeLong(capturedAt)
+			writeString(treeUri.toString())
+		}
+
+		/**
+		 * Append a document.  The children of a directory must be written consecutively,
+		 * then recorded with [setChildren].
+		 *
+		 * @return index of the document
+		 */
+		fun write(parent: Int, documentId: String, name: String?, mimeType: String?, size: Long,
+				  lastModified: Long, flags: Int): Int {
+			if (count == offsets.size) {
+				offsets = offsets.copyOf(count * 2)
+				firstChildren = firstChildren.copyOf(count * 2)
+				childCounts = childCounts.copyOf(count * 2)
+			}
+			checkSize()
+			offsets[count] = stream.size()
+
+			stream.writeInt(parent)
+			stream.writeInt(flags)
+			stream.writeInt(mimeType?.let { mimes.getOrPut(it) { mimes.size } } ?: -1)
+			stream.writeLong(size)
+			stream.writeLong(lastModified)
+			writeString(documentId)
+			writeString(name ?: "")
+			return count++
+		}
+
+		/**
+		 * @param count number of children, or [NOT_LISTED]
+		 */
+		fun setChildren(directory: Int, first: Int, count: Int) {
+			firstChildren[directory] = first
+			childCounts[directory] = count
+		}
+
+		/**
+		 * Write the mime table, index and trailer then replace the target
+		 */
+		fun finish() {
+			val mimesOffset = stream.size()
+			stream.writeInt(mimes.size)
+			for (mime in mimes.keys)
+				writeString(mime)
+
+			val indexOffset = stream.size()
+			for (i in 0 until count) {
+				stream.writeInt(offsets[i])
+				stream.writeInt(firstChildren[i])
+				stream.writeInt(childCounts[i])
+			}
+
+			stream.writeInt(indexOffset)
+			stream.writeInt(count)
+			stream.writeInt(mimesOffset)
+			stream.writeInt(MAGIC)
+			checkSize()
+			stream.flush()
+			output.fd.sync()
+			stream.close()
+
+			if (!temp.renameTo(target))
+				throw IOException("Failed to replace $target")
+			finished = true
+		}
+
+		/**
+		 * Discard the snapshot if it wasn't finished
+		 */
+		override fun close() {
+			if (finished)
+				return
+			stream.close()
+			temp.delete()
+		}
+
+		/**
+		 * Offsets are ints, and [DataOutputStream.size] stops counting at [Int.MAX_VALUE]
+		 */
+		private fun checkSize() {
+			if (stream.size() == Int.MAX_VALUE)
+				throw IOException("Snapshot exceeds 2GB")
+		}
+
+		private fun writeString(value: String) {
+			val bytes = value.toByteArray(Charsets.UTF_8)
+			if (bytes.size > 0xffff)
+				throw IOException("String too long for snapshot: ${bytes.size} bytes")
+			stream.writeShort(bytes.size)
+			stream.write(bytes)
+		}
+	}
+
+	/**
+	 * One child of a directory listing, held only until the directory is written
+	 */
+	private class Row(val documentId: String, val name: String?, val mimeType: String?, val size: Long,
+					  val lastModified: Long, val flags: Int)
+
+	companion object {
+		/** [childCount] of a directory that couldn't be listed */
+		const val NOT_LISTED = -1
+
+		private const val MAGIC = 0x55445453 // UDTS
+		/** 2 marks directories that couldn't be listed, 1 stored them as empty */
+		private const val VERSION = 2
+		private const val HEADER_SIZE = 18
+		private const val TRAILER_SIZE = 16
+		private const val INDEX_ENTRY_SIZE = 12
+		/** parent, flags, mime, size, last modified */
+		private const val RECORD_FIXED_SIZE = 28
+
+		private val TAG = TreeSnapshot::class.java.simpleName
+
+		private val COLUMNS = arrayOf(
+			DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+			DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+			DocumentsContract.Document.COLUMN_MIME_TYPE,
+			DocumentsContract.Document.COLUMN_SIZE,
+			DocumentsContract.Document.COLUMN_LAST_MODIFIED,
+			DocumentsContract.Document.COLUMN_FLAGS)
+
+		/**
+		 * Open a snapshot written by [capture]
+		 *
+		 * @throws IOException if the file is missing, incomplete, of an older version or not a snapshot
+		 */
+		@JvmStatic
+		@Throws(IOException::class)
+		fun open(file: File): TreeSnapshot {
+			val channel = RandomAccessFile(file, "r").channel
+			try {
+				return TreeSnapshot(channel)
+			} catch (e: Exception) {
+				channel.close()
+				throw e as? IOException ?: IOException("Corrupt tree snapshot", e)
+			}
+		}
+
+		/**
+		 * List the tree beneath `root` breadth first, one children query a directory, and
+		 * store it in `file`, which should be app-private, replacing any previous snapshot.
+		 * The tree is written as it is listed, so memory use is bounded by the largest
+		 * directory rather than the tree.  Directories whose listing fails are stored without
+		 * children and marked not listed, see [isListed].
+		 *
+		 * @param root a directory within a tree uri
+		 * @param signal cancels the capture, which then throws [android.os.OperationCanceledException]
+		 * and leaves any previous snapshot in place
+		 * @return the new snapshot, opened
+		 * @throws IllegalArgumentException if `root` is not within a tree uri
+		 */
+		@JvmStatic
+		@JvmOverloads
+		@Throws(IOException::class)
+		fun capture(context: Context, root: UsefulDocumentFile, file: File, signal: CancellationSignal? = null): TreeSnapshot {
+			val uriFactory = TreeUriFactory.forTree(root.uri)
+			val rootId = root.documentId ?: throw IllegalArgumentException("No document id: ${root.uri}")
+
+			val treeUri = DocumentsContract.buildTreeDocumentUri(root.uri.authority, DocumentUtil.getTreeDocumentId(root.uri))
+			val capturedAt = System.currentTimeMillis()
+			val rootRow = ProviderInstrumentation.query(context.contentResolver, root.uri, COLUMNS, null, null, null, signal)
+				?.use { if (it.moveToFirst()) readRow(it) else null }
+				?: Row(rootId, root.name, DocumentsContract.Document.MIME_TYPE_DIR, 0, 0, 0)
+
+			Writer(file, treeUri, capturedAt).use { writer ->
+				writer.write(-1, rootId, rootRow.name, DocumentsContract.Document.MIME_TYPE_DIR, rootRow.size,
+					rootRow.lastModified, rootRow.flags)
+
+				val directories = ArrayDeque<Pair<Int, String>>()
+				directories.add(0 to rootId)
+				while (directories.isNotEmpty()) {
+					val (directory, directoryId) = directories.removeFirst()
+					val rows = listChildren(context, uriFactory.buildDocumentUri(directoryId), signal)
+					if (rows == null) {
+						writer.setChildren(directory, writer.count, NOT_LISTED)
+						continue
+					}
+					val first = writer.count
+					for (row in rows) {
+						val index = writer.write(directory, row.documentId, row.name, row.mimeType, row.size,
+							row.lastModified, row.flags)
+						if (DocumentsContract.Document.MIME_TYPE_DIR == row.mimeType)
+							directories.add(index to row.documentId)
+					}
+					writer.setChildren(directory, first, rows.size)
+				}
+				writer.finish()
+			}
+			return open(file)
+		}
+
+		/**
+		 * @return the children of `directory` sorted by document id, or null if the listing failed
+		 */
+		private fun listChildren(context: Context, directory: Uri, signal: CancellationSignal?): List<Row>? {
+			val cursor = DocumentsContractApi21.queryChildren(context, directory, COLUMNS, signal)
+			if (cursor == null) {
+				signal?.throwIfCanceled()
+				Log.w(TAG, "Failed to list $directory")
+				return null
+			}
+
+			val rows = ArrayList<Row>()
+			cursor.use {
+				try {
+					while (cursor.moveToNext())
+						readRow(cursor)?.let { rows.add(it) }
+				} catch (e: OperationCanceledException) {
+					throw e
+				} catch (e: Exception) {
+					// Part of a listing would pass for all of it
+					Log.w(TAG, "Failed to list $directory: $e")
+					return null
+				}
+			}
+			signal?.throwIfCanceled()
+			rows.sortBy { it.documentId }
+			return rows
+		}
+
+		private fun readRow(cursor: Cursor): Row? {
+			val id = cursor.getString(0) ?: return null
+			return Row(id, cursor.getString(1), cursor.getString(2),
+				if (cursor.isNull(3)) 0 else cursor.getLong(3),
+				if (cursor.isNull(4)) 0 else cursor.getLong(4),
+				if (cursor.isNull(5)) 0 else cursor.getInt(5))
+		}
+	}
+}
@@ -1,11 +1,18 @@
 package com.anthonymandra.framework
 
-import android.annotation.SuppressLint
+import android.annotation.TargetApi
 import android.content.ContentResolver
 import android.content.Context
 import android.content.Intent
 import android.content.pm.PackageManager
+import android.database.Cursor
 import android.net.Uri
+import android.os.Build
+import android.os.Bundle
+import android.os.CancellationSignal
+import android.os.Handler
+import android.os.OperationCanceledException
+import android.os.ParcelFileDescriptor
 import android.provider.DocumentsContract
 import android.text.TextUtils
 import android.util.Log
@@ -15,6 +22,8 @@ import com.anthonymandra.support.v4.provider.DocumentsContractApi21
 import java.io.File
 import java.io.FileNotFoundException
 import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
 import java.util.*
 
 
@@ -65,7 +74,7 @@ import java.util.*
  * @see DocumentsContract
  */
 class UsefulDocumentFile internal constructor(
-   private val mParent: UsefulDocumentFile?,
+   @Volatile private var mParent: UsefulDocumentFile?,
    private val mContext: Context,
    uri: Uri) {
     /**
@@ -79,8 +88,23 @@ class UsefulDocumentFile internal constructor(
      * @see ContentResolver.openOutputStream
      * @see ContentResolver.openFileDescriptor
      */
-    var uri: Uri private set
-    private lateinit var cachedData: FileData
+    var uri: Uri = uri
+        private set(value) {
+            field = value
+            parsedId = null
+        }
+    @Volatile private var parsedId: DocumentId? = null
+    /** True once [mParent] holds the parent, or null at the top of the tree */
+    @Volatile private var parentResolved = mParent != null
+    @Volatile private var cachedData: FileData? = null
+
+    /**
+     * Used by listings that already gathered the metadata of the child in the children query
+     */
+    internal constructor(parent: UsefulDocumentFile?, context: Context, uri: Uri, data: FileData)
+        : this(parent, context, uri) {
+        cache(data)
+    }
 
     /**
      * Return the parent file of this document. Only defined inside of the
@@ -95,16 +119,50 @@ class UsefulDocumentFile internal constructor(
      * Note: This may not be the *only* parent as Documents may have multiple parents.
      * This will simply attempt to acquire the parent used to generate the tree.
      * For filesystem use this is sufficient.
+     *
+     *
+     * The parent is resolved once and kept, so the ancestors of a handle are only parsed
+     * the first time they're walked and are shared by every handle descending from it.
      */
     val parentFile: UsefulDocumentFile?
-        get() = mParent ?: parentDocument
+        get() {
+            if (!parentResolved) {
+                mParent = parentDocument
+                parentResolved = true
+            }
+            return mParent
+        }
+
+    /**
+     * Iterate the ancestors of this document, starting with [parentFile] and ending at the
+     * top of the tree.  Ancestors are resolved once and kept, so repeated walks, such as
+     * rendering a breadcrumb, only traverse existing handles.
+     */
+    fun ancestors(): Iterator<UsefulDocumentFile> = object : Iterator<UsefulDocumentFile> {
+        private var next = parentFile
+
+        override fun hasNext() = next != null
+
+        override fun next(): UsefulDocumentFile {
+            val current = next ?: throw NoSuchElementException()
+            next = current.parentFile
+            return current
+        }
+    }
 
     // This is not a document uri, for now I'll try to handle this gracefully.
     // While it may be convenient for a user to be able to use this object for all uri,
     // it may be difficult to manage all aspects gracefully.
     val documentId: String?
+        get() = parsedDocumentId?.toString()
+
+    /**
+     * The document id parsed once per uri, a rename resets it
+     */
+    private val parsedDocumentId: DocumentId?
         get() {
-			  return try {
+			  parsedId?.let { return it }
+			  val id = try {
 				  if (DocumentsContract.isDocumentUri(mContext, uri)) {
 					  DocumentsContract.getDocumentId(uri)
 				  } else {
@@ -112,7 +170,8 @@ class UsefulDocumentFile internal constructor(
 				  }
 			  } catch (e: IllegalArgumentException) {
 				  null
-			  }
+			  } ?: return null
+			  return DocumentId.parse(id).also { parsedId = it }
         }
 
     private val parentDocument: UsefulDocumentFile?
@@ -123,21 +182,21 @@ class UsefulDocumentFile internal constructor(
                 return UsefulDocumentFile(null, mContext, Uri.fromFile(parent))
             }
 
-            val documentId = documentId
-            val parts = DocumentUtil.getPathSegments(documentId!!) ?: try {
-                val treeId = DocumentsContract.getTreeDocumentId(uri)
-                return UsefulDocumentFile.fromUri(mContext, DocumentsContract.buildTreeDocumentUri(uri.authority, treeId))
-            } catch (e: IllegalArgumentException) {
+            val documentId = parsedDocumentId ?: return null
+            val treeId = DocumentUtil.getTreeDocumentId(uri)
+            // The top of the tree, its parent is beyond the grant
+            if (treeId != null && treeId == documentId.toString())
                 return null
-            }
 
-            val parentParts = Arrays.copyOfRange(parts, 0, parts.size - 1)
-            val path = TextUtils.join("/", parentParts)
-            val root = DocumentUtil.getRoot(documentId)
-            val parentId = DocumentUtil.createNewDocumentId(root!!, path)
+            val parentId = documentId.parent?.toString() ?: run {
+                if (treeId == null)
+                    return null
+                val root = UsefulDocumentFile.fromUri(mContext, DocumentsContract.buildTreeDocumentUri(uri.authority, treeId))
+                return if (root.uri == uri) null else root
+            }
 
             val parentUri = if (DocumentUtil.hasTreeDocumentId(uri)) {
-				  DocumentsContract.buildDocumentUriUsingTree(uri, parentId)
+				  TreeUriFactory.forTree(uri).buildDocumentUri(parentId)
 			  } else {
 				  DocumentsContract.buildDocumentUri(uri.authority, parentId)
 			  }
@@ -153,8 +212,7 @@ class UsefulDocumentFile internal constructor(
      */
     val name: String
         get() {
-			  if (::cachedData.isInitialized)
-				  return cachedData.name
+			  metadata()?.let { return it.name }
 			  return if (isFileScheme(uri)) File(uri.path).name
 			  			else DocumentsContractApi19.getName(mContext, uri) ?: parseName(uri) ?: "error"
 		  }
@@ -166,8 +224,7 @@ class UsefulDocumentFile internal constructor(
      */
     val type: String?
         get() {
-			  if (::cachedData.isInitialized && cachedData.type != null)
-				  return cachedData.type
+			  metadata()?.let { return it.type }
 			  return if (isFileScheme(uri)) parseType(File(uri.path))
 			  			else DocumentsContractApi19.getType(mContext, uri)
 		  }
@@ -181,8 +238,7 @@ class UsefulDocumentFile internal constructor(
      */
     val isDirectory: Boolean
         get() {
-			  if (::cachedData.isInitialized)
-				  return cachedData.isDirectory
+			  metadata()?.let { return it.isDirectory }
 			  return if (isFileScheme(uri)) File(uri.path).isDirectory
 			  			else DocumentsContractApi19.isDirectory(mContext, uri)
 		  }
@@ -195,8 +251,7 @@ class UsefulDocumentFile internal constructor(
      */
     val isFile: Boolean
         get() {
-			  if (::cachedData.isInitialized)
-				  return cachedData.isFile
+			  metadata()?.let { return it.isFile }
 			  return if (isFileScheme(uri)) File(uri.path).isFile
 			  			else DocumentsContractApi19.isFile(mContext, uri)
 		  }
@@ -211,8 +266,7 @@ class UsefulDocumentFile internal constructor(
 	 */
 	val lastModified: Long
 		get() {
-			if(::cachedData.isInitialized)
-				return cachedData.length
+			metadata()?.let { return it.lastModified }
 			return if (isFileScheme(uri)) File(uri.path).lastModified()
 					else DocumentsContractApi19.lastModified(mContext, uri)
 		}
@@ -227,12 +281,18 @@ class UsefulDocumentFile internal constructor(
 	 */
 	val length: Long
 		get() {
-			if(::cachedData.isInitialized)
-				return cachedData.length
+			metadata()?.let { return it.length }
 			return if (isFileScheme(uri)) File(uri.path).length()
 					else DocumentsContractApi19.length(mContext, uri)
 		}
 
+	/**
+	 * Raw [DocumentsContract.Document.COLUMN_FLAGS] of the document when its data is cached,
+	 * otherwise 0
+	 */
+	internal val flags: Int
+		get() = metadata()?.flags ?: 0
+
 	/**
 	 * Indicates whether the current context is allowed to read from this file.
 	 *
@@ -240,8 +300,7 @@ class UsefulDocumentFile internal constructor(
 	 */
 	val canRead: Boolean
 		get() {
-			if(::cachedData.isInitialized)
-				return cachedData.canRead
+			metadata()?.let { return it.canRead }
 			return if (isFileScheme(uri)) File(uri.path).canRead()
 					else DocumentsContractApi19.canRead(mContext, uri)
 		}
@@ -262,27 +321,48 @@ class UsefulDocumentFile internal constructor(
  */
 val canWrite: Boolean
 	get() {
-		if(::cachedData.isInitialized)
-			return cachedData.canWrite
+		metadata()?.let { return it.canWrite }
 		return if (isFileScheme(uri)) File(uri.path).canWrite()
 				else DocumentsContractApi19.canWrite(mContext, uri)
 	}
     /**
      * For multiple file access calls it's beneficial to cache the data first.
      * If you cache the data, do not hold the reference for long periods of time as it
-     * will potentially return stale data
+     * will potentially return stale data.
+     *
+     * @param signal cancels the query, which then throws [android.os.OperationCanceledException]
      */
-    fun cacheFileData() {
+    @JvmOverloads
+    fun cacheFileData(signal: CancellationSignal? = null) {
 		 if (isFileScheme(uri))
 			 cacheFile()
 		 else {
-			 cacheUri()
+			 cache(queryUri(signal))
 		 }
     }
 
+	private fun cache(data: FileData?) {
+		cachedData = data
+	}
+
+	/**
+	 * The data cached on this handle, otherwise the shared [MetadataCache] entry.  When the
+	 * shared cache is enabled a miss is filled with a single query of every column rather than
+	 * leaving each property to query individually.  The result is only held by the shared
+	 * cache, so it expires and is invalidated with it rather than pinning this handle.
+	 */
+	private fun metadata(signal: CancellationSignal? = null): FileData? {
+		cachedData?.let { return it }
+
+		if (isFileScheme(uri) || !MetadataCache.isEnabled)
+			return null
+		MetadataCache.get(uri)?.let { return it }
+		return queryUri(signal)
+	}
+
 	private fun cacheFile() {
 		val f = File(uri.path)
-		cachedData = FileData(
+		cache(FileData(
 			f.canRead(),
 			f.canWrite(),
 			f.exists(),
@@ -294,82 +374,105 @@ val canWrite: Boolean
 			f.length(),
 			f.name,
 			Uri.fromFile(f.parentFile)
-		)
+		))
 	}
 
 	/**
 	 * Gather all file data in a single resolver call.  This is much faster if a code segment
-	 * requires 2 or more calls to file-related data which individually involve resolver calls
+	 * requires 2 or more calls to file-related data which individually involve resolver calls.
+	 * The result is recorded in the shared [MetadataCache], the caller decides whether this
+	 * handle keeps it.
 	 */
-	 @SuppressLint("Range")
-     private fun cacheUri() {
-		val columns = arrayOf(
-			DocumentsContract.Document.COLUMN_MIME_TYPE,
-			DocumentsContract.Document.COLUMN_LAST_MODIFIED,
-			DocumentsContract.Document.COLUMN_SIZE,
-			DocumentsContract.Document.COLUMN_FLAGS,
-			DocumentsContract.Document.COLUMN_DISPLAY_NAME)
-
+     private fun queryUri(signal: CancellationSignal? = null): FileData {
 		try {
-			mContext.contentResolver.query(uri, columns, null, null, null).use { cursor ->
-				if (cursor == null || cursor.count == 0) {
-					return // This likely means !exists, nothing to cache
-				} else {
-					cursor.moveToFirst()
-
-					// Ignore if grant doesn't allow read
-					val readPerm = mContext.checkCallingOrSelfUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION) == PackageManager.PERMISSION_GRANTED
-					val writePerm = mContext.checkCallingOrSelfUriPermission(uri, Intent.FLAG_GRANT_WRITE_URI_PERMISSION) == PackageManager.PERMISSION_GRANTED
-					val rawType = cursor.getString(cursor.getColumnIndex(DocumentsContract.Document.COLUMN_MIME_TYPE))
-					val flags = cursor.getInt(cursor.getColumnIndex(DocumentsContract.Document.COLUMN_FLAGS))
-					val lastModified = cursor.getLong(cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED))
-					val length = cursor.getLong(cursor.getColumnIndex(DocumentsContract.Document.COLUMN_SIZE))
-					val hasMime = !TextUtils.isEmpty(rawType)
-					val supportsDelete = flags and DocumentsContract.Document.FLAG_SUPPORTS_DELETE != 0
-					val supportsCreate = flags and DocumentsContract.Document.FLAG_DIR_SUPPORTS_CREATE != 0
-					val supportsWrite = flags and DocumentsContract.Document.FLAG_SUPPORTS_WRITE != 0
-					val name = cursor.getString(cursor.getColumnIndex(DocumentsContract.Document.COLUMN_DISPLAY_NAME))
-					val isDirectory = DocumentsContract.Document.MIME_TYPE_DIR == rawType
-					val type = if (isDirectory) null else rawType
-					val isFile = if (isDirectory) false else hasMime
-
-					cachedData = FileData(
-						readPerm && hasMime,
-						writePerm && (supportsDelete || isDirectory && supportsCreate || hasMime && supportsWrite),
-						true,
-						type,
-						uri,
-						isDirectory,
-						isFile,
-						lastModified,
-						length,
-						name ?: UsefulDocumentFile.parseName(uri) ?: "error",
-						parentDocument?.uri
-					)
-				}
+			ProviderInstrumentation.query(mContext.contentResolver, uri, METADATA_COLUMNS, null, null, null, signal).use { cursor ->
+				if (cursor == null || !cursor.moveToFirst())
+					return missing() // This likely means !exists
+
+				// Ignore if grant doesn't allow read
+				val readPerm = mContext.checkCallingOrSelfUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION) == PackageManager.PERMISSION_GRANTED
+				val writePerm = mContext.checkCallingOrSelfUriPermission(uri, Intent.FLAG_GRANT_WRITE_URI_PERMISSION) == PackageManager.PERMISSION_GRANTED
+				val data = FileDataReader(cursor, readPerm, writePerm).read(uri, parentFile?.uri)
+				MetadataCache.put(uri, data)
+				return data
 			}
+		} catch (e: OperationCanceledException) {
+			throw e // Nothing was learned, don't record the document as missing
 		} catch (e: Exception) {
-			// This is what DocumentContract.exists does, likely means !exists, nothing to cache
+			// This is what DocumentContract.exists does, likely means !exists
+			return missing()
 		}
 	}
-    init {
-        this.uri = uri
-    }
+
+	/**
+	 * Record that the document does not exist
+	 */
+	private fun missing(): FileData {
+		val data = FileData.missing(uri)
+		MetadataCache.put(uri, data)
+		return data
+	}
 
     /**
-     * Search through [.listFiles] for the first document matching the
-     * given display name. Returns `null` when no matching document is
-     * found.
+     * Search for the first document matching the given display name. Returns `null` when
+     * no matching document is found.
+     *
+     * The first search lists the directory once to build a name index (see [DirectoryIndex]),
+     * subsequent searches of the same directory are answered from the index without any
+     * resolver calls until the index is invalidated.
+     *
+     * @see invalidateIndex
      */
     fun findFile(displayName: String): UsefulDocumentFile? {
-        for (doc in listFiles()) {
-            if (displayName == doc.name) {
-                return doc
-            }
-        }
-        return null
+		if (isFileScheme(uri)) {
+			val target = File(uri.path, displayName)
+			return if (target.exists()) UsefulDocumentFile(this, mContext, Uri.fromFile(target)) else null
+		}
+
+		val index = DirectoryIndex.get(uri) ?: buildIndex() ?: return null
+		val documentId = index[displayName] ?: return null
+		return UsefulDocumentFile(this, mContext, TreeUriFactory.forTree(uri).buildDocumentUri(documentId))
     }
 
+	private fun buildIndex(): Map<String, String>? {
+		if (!Util.hasLollipop())
+			throw UnsupportedOperationException()
+
+		val builtAt = DirectoryIndex.generation(uri)
+		val projection = arrayOf(
+			DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+			DocumentsContract.Document.COLUMN_DISPLAY_NAME)
+		try {
+			DocumentsContractApi21.queryChildren(mContext, uri, projection).use { cursor ->
+				if (cursor == null)
+					return null
+
+				val index = HashMap<String, String>(cursor.count * 4 / 3 + 1)
+				while (cursor.moveToNext()) {
+					if (cursor.isNull(0) || cursor.isNull(1))
+						continue
+					// Keep the first match as the linear search did
+					val name = cursor.getString(1)
+					if (!index.containsKey(name))
+						index[name] = cursor.getString(0)
+				}
+				DirectoryIndex.put(uri, index, builtAt)
+				return index
+			}
+		} finally {
+			DirectoryIndex.abandon(uri, builtAt)
+		}
+	}
+
+	/**
+	 * Discard the name index used by [findFile] for this directory.  Changes made through
+	 * this class invalidate the index automatically, this is only needed when the directory
+	 * was changed externally.
+	 */
+	fun invalidateIndex() {
+		DirectoryIndex.invalidate(uri)
+	}
+
 	/**
 	 * Create the "file" if it does not exist.  By default it will create a file and all
 	 * necessary folders.  You can create a folder with `isDirectory`, you can avoid creating
@@ -377,53 +480,144 @@ val canWrite: Boolean
 	 * condition if the folder's parent doesn't exist or can't write.
 	 */
 	fun create(isDirectory: Boolean = false, createDirectories: Boolean = true): Boolean {
-		cacheFileData()
-		if (!::cachedData.isInitialized || !cachedData.exists) {
-			// TODO: Previously pulled name from uri if file did not exist
+		if (exists())
+			return true
 
-			var parent = parentFile
-			if (parent == null && !createDirectories)
+		val parent = parentFile ?: return false
+		val trusted = ArrayList<Uri>(1)
+		if (!createIn(parent, isDirectory, createDirectories, trusted)) {
+			// Another app may have removed a directory remembered as existing, along with any
+			// known ancestors above it that were never probed, so forget them all and probe again
+			if (trusted.isEmpty())
 				return false
-
-			/*
-			This next part is necessary because DocumentFile.findFile is extremely slow in large
-			folders, so what we do instead is track up the tree what folders need creation
-			and place them in a stack (Using the convenient *working* UsefulDocumentFile.getParentFile).
-			We then walk the stack back down creating folders as needed.
-			*/
-
-			val hierarchyTree = Stack<UsefulDocumentFile>()
-			// Create an hierarchical tree stack of folders that need creation
-			// Stop if the parent exists or we've reached the root
-			while (parent != null && !parent.exists()) {
-				hierarchyTree.push(parent)
-				parent = parentFile
+			var top = trusted[0]
+			for (ancestor in parent.ancestors()) {
+				if (KnownDirectories.contains(ancestor.uri))
+					top = ancestor.uri
 			}
+			KnownDirectories.invalidateTree(top)
+			if (!createIn(parent, isDirectory, createDirectories, null))
+				return false
+		}
+		onCreated()
+		return true
+	}
 
-			// We should be at the top of the tree
-			if (parent != null && !hierarchyTree.empty()) {
-				var outerDirectory = parent
-				// Now work back down to create the directories if needed
-				while (!hierarchyTree.empty()) {
-					val innerDirectory = hierarchyTree.pop()
-					outerDirectory = outerDirectory!!.createDirectory(innerDirectory.name)
-					if (outerDirectory == null) {
-						return false
-					}
-				}
-			}
+	private fun createIn(parent: UsefulDocumentFile, isDirectory: Boolean, createDirectories: Boolean,
+						 trusted: MutableList<Uri>?): Boolean {
+		if (!parent.ensureDirectory(createDirectories, trusted))
+			return false
+		return if (isDirectory) parent.createDirectory(name) != null else parent.createFile(null, name) != null
+	}
+
+	/**
+	 * Ensure this directory exists, optionally creating it and any missing ancestors.
+	 *
+	 * DocumentFile.findFile is extremely slow in large folders, so rather than searching we
+	 * climb the hierarchical tree only as far as the first directory that is known to exist
+	 * (see [KnownDirectories]) or found to exist, then create back down.
+	 *
+	 * @param trusted receives the directory taken from [KnownDirectories] without asking the provider
+	 */
+	private fun ensureDirectory(create: Boolean, trusted: MutableList<Uri>?): Boolean {
+		if (KnownDirectories.contains(uri)) {
+			trusted?.add(uri)
+			return true
+		}
+		if (exists()) {
+			if (!isDirectory)
+				return false
+			KnownDirectories.add(uri)
+			return true
+		}
+		if (!create)
+			return false
+
+		val parent = parentFile ?: return false
+		if (!parent.ensureDirectory(true, trusted))
+			return false
+		val created = parent.createDirectory(name) ?: return false
+		KnownDirectories.add(created.uri)
+		onCreated()
+		return true
+	}
+
+	/**
+	 * Create a document at a relative path beneath this directory, such as `2026/10/16/IMG.jpg`,
+	 * creating any missing intermediate directories.
+	 *
+	 * Directories already known to exist (see [KnownDirectories]) are neither probed nor
+	 * created, so after the first file in a folder each further file costs a single
+	 * [DocumentsContract.createDocument] call.  Should a creation fail beneath such a directory,
+	 * as when another app removed it, the directory is forgotten and the path probed again.
+	 * Like [create] this assumes a hierarchical tree similar to SCHEME_FILE, falling back to
+	 * [findFile] for providers with opaque ids.
+	 *
+	 * @param path path relative to this directory, the last segment is the display name
+	 * @param mimeType MIME type of the new document, see [createFile]
+	 * @return file representing the newly created document, or null if failed
+	 */
+	@JvmOverloads
+	fun createPath(path: String, mimeType: String? = null): UsefulDocumentFile? {
+		val trusted = ArrayList<Uri>()
+		createPath(path, mimeType, trusted)?.let { return it }
+		if (trusted.isEmpty())
+			return null
+		KnownDirectories.invalidateTree(trusted[0])
+		return createPath(path, mimeType, null)
+	}
+
+	/**
+	 * @param trusted receives the directories taken from [KnownDirectories] without asking the
+	 * provider, outermost first
+	 */
+	private fun createPath(path: String, mimeType: String?, trusted: MutableList<Uri>?): UsefulDocumentFile? {
+		var directory = this
+		var start = 0
+		while (true) {
+			val end = path.indexOf('/', start)
+			if (end < 0)
+				break
+			if (end > start)
+				directory = directory.childDirectory(path.substring(start, end), trusted) ?: return null
+			start = end + 1
+		}
+		if (start == path.length)
+			return null
+		return directory.createFile(mimeType, path.substring(start))
+	}
 
-			parent = parentFile ?: return false
+	/**
+	 * Return the child directory named `displayName`, creating it if needed
+	 */
+	private fun childDirectory(displayName: String, trusted: MutableList<Uri>?): UsefulDocumentFile? {
+		if (isFileScheme(uri))
+			return createDirectory(displayName)
 
-			if (isDirectory) {
-				parent.createDirectory(name) ?: return false
-			} else {
-				parent.createFile(null, name) ?: return false
+		val documentId = documentId ?: return null
+		val child = if (documentId.indexOf(':') < 0) {
+			// Opaque ids can't be assumed, search instead
+			findFile(displayName)
+		} else {
+			val childUri = TreeUriFactory.forTree(uri).buildDocumentUri(
+				DocumentUtil.createChildDocumentId(documentId, displayName))
+			if (KnownDirectories.contains(childUri)) {
+				trusted?.add(childUri)
+				return UsefulDocumentFile(this, mContext, childUri)
 			}
+			UsefulDocumentFile(this, mContext, childUri).takeIf { it.exists() }
+		}
 
-			return true
+		if (child != null) {
+			if (!child.isDirectory)
+				return null
+			KnownDirectories.add(child.uri)
+			return child
 		}
-		return true	// already exists
+
+		val created = createDirectory(displayName) ?: return null
+		KnownDirectories.add(created.uri)
+		return created
 	}
 
     /**
@@ -450,7 +644,7 @@ val canWrite: Boolean
 			  val target = File(mFile, name)
 			  try {
 				  if (target.createNewFile())
-					  UsefulDocumentFile(this, mContext, Uri.fromFile(target))
+					  UsefulDocumentFile(this, mContext, Uri.fromFile(target)).also { onChildCreated(it.uri) }
 				  else
 					  null
 			  } catch (e: IOException) {
@@ -464,6 +658,7 @@ val canWrite: Boolean
 			  return try {
 				  val newFile = DocumentsContractApi21.createFile(mContext, uri, mimeType, displayName)
 					  ?: return null
+				  onChildCreated(newFile)
 				  UsefulDocumentFile(
 					  this,
 					  mContext,
@@ -487,7 +682,7 @@ val canWrite: Boolean
 
 			  val target = File(mFile, displayName)
 			  if (target.isDirectory || target.mkdir()) {
-				  UsefulDocumentFile(this, mContext, Uri.fromFile(target))
+				  UsefulDocumentFile(this, mContext, Uri.fromFile(target)).also { onChildCreated(it.uri) }
 			  } else {
 				  null
 			  }
@@ -496,10 +691,13 @@ val canWrite: Boolean
 				  throw UnsupportedOperationException()
 
 			  try {
+				  val newDirectory = DocumentsContractApi21.createDirectory(mContext, uri, displayName)
+					  ?: return null
+				  onChildCreated(newDirectory)
 				  UsefulDocumentFile(
 					  this,
 					  mContext,
-					  DocumentsContractApi21.createDirectory(mContext, uri, displayName))
+					  newDirectory)
 			  } catch (e: FileNotFoundException) {
 				  null
 			  }
@@ -515,59 +713,373 @@ val canWrite: Boolean
      *
      * @return `true` if this file was deleted, `false` otherwise.
      * @see DocumentsContract.deleteDocument
+     * @see deleteAll
      */
     fun delete(): Boolean {
-        return if (isFileScheme(uri)) deleteFile() else deleteUri()
+        return delete(null)
     }
 
-    private fun deleteFile(): Boolean {
-        val mFile = File(uri.path)
-        deleteContents(mFile)
-        return mFile.delete()
-    }
+	/**
+	 * @param signal stops the delete of a file directory between files
+	 */
+	internal fun delete(signal: CancellationSignal?): Boolean {
+		try {
+			return if (isFileScheme(uri)) DocumentDeleter.deleteTree(File(uri.path), signal) else deleteUri()
+		} finally {
+			// Also when cancelled, a partly deleted tree must not be remembered as intact
+			invalidateCaches(uri)
+		}
+	}
 
     private fun deleteUri(): Boolean {
         return DocumentsContractApi19.delete(mContext, uri)
     }
 
+	/**
+	 * Drop everything cached about `target`, its descendants and the directory containing it
+	 */
+	internal fun invalidateCaches(target: Uri) {
+		// Nothing is cached beneath a file, so only directories scan the caches for descendants,
+		// sparing bulk deletes of files a scan per cache and file
+		val isFile = cachedData?.isFile == true
+		cachedData = null
+		if (isFile) {
+			MetadataCache.invalidate(target)
+		} else {
+			DirectoryIndex.invalidateTree(target)
+			MetadataCache.invalidateTree(target)
+			KnownDirectories.invalidateTree(target)
+		}
+		DirectoryStatsCache.invalidate(target)
+		parentFile?.let {
+			DirectoryIndex.invalidate(it.uri)
+			MetadataCache.invalidate(it.uri)
+		}
+	}
+
+	/**
+	 * Drop the "missing" data cached by the [exists] check that preceded creating this document
+	 */
+	private fun onCreated() {
+		cachedData = null
+		MetadataCache.invalidate(uri)
+	}
+
+	/**
+	 * Drop everything cached that a new child of this directory makes stale
+	 */
+	internal fun onChildCreated(child: Uri) {
+		cachedData = null
+		DirectoryIndex.invalidate(uri)
+		MetadataCache.invalidate(uri)
+		MetadataCache.invalidate(child)
+		DirectoryStatsCache.invalidate(uri)
+	}
+
     /**
      * Returns a boolean indicating whether this file can be found.
      *
+     * The provider is asked unless data was cached on this handle (see [cacheFileData]), the
+     * shared [MetadataCache] is not consulted so documents removed by other apps are seen.
+     *
+     * @param signal cancels the query, which then throws [android.os.OperationCanceledException]
      * @return `true` if this file exists, `false` otherwise.
      */
-    fun exists(): Boolean {
-        return if (isFileScheme(uri)) File(uri.path).exists()
-		  			else DocumentsContractApi19.exists(mContext, uri)
+    @JvmOverloads
+    fun exists(signal: CancellationSignal? = null): Boolean {
+		if (isFileScheme(uri))
+			return File(uri.path).exists()
+		cachedData?.let { return it.exists }
+		return DocumentsContractApi19.exists(mContext, uri, signal)
     }
 
     /**
      * Returns an array of files contained in the directory represented by this
      * file.
      *
+     * When `withMetadata` is set the display name, MIME type, size, last modified and flags
+     * of every child are requested in the same children query and each child is returned with
+     * its data already cached (see [cacheFileData]).  Listing a directory with full metadata
+     * then costs a single resolver call instead of one or more calls per child.
+     *
+     * @param withMetadata populate the cached data of each child from the listing
+     * @param signal cancels the children query, which then throws [android.os.OperationCanceledException]
      * @return an array of files or `null`.
      * @see DocumentsContract.buildChildDocumentsUriUsingTree
      */
-    fun listFiles(): Array<UsefulDocumentFile> {
-        return if (isFileScheme(uri)) {
-			  val mFile = File(uri.path)
-			  val results = ArrayList<UsefulDocumentFile>()
-			  val files = mFile.listFiles()
-			  if (files != null) {
-				  for (file in files) {
-					  results.add(UsefulDocumentFile(this, mContext, Uri.fromFile(file)))
-				  }
-			  }
-			  results.toTypedArray()
-		  } else {
-			  if (!Util.hasLollipop())
-				  throw UnsupportedOperationException()
-
-			  DocumentsContractApi21.listFiles(mContext, uri).map {
-				  UsefulDocumentFile(this, mContext, it)
-			  }.toTypedArray()
-		  }
+    @JvmOverloads
+    fun listFiles(withMetadata: Boolean = false, signal: CancellationSignal? = null): Array<UsefulDocumentFile> {
+		iterateFiles(withMetadata, signal).use { children ->
+			val results = ArrayList<UsefulDocumentFile>(children.count)
+			children.forEach { results.add(it) }
+			return results.toTypedArray()
+		}
     }
 
+	/**
+	 * Returns a lazy iterator over the files contained in the directory represented by this
+	 * file.  Children are created one at a time from the open children cursor so processing
+	 * can begin immediately and memory remains flat regardless of the size of the directory.
+	 *
+	 * The iterator closes itself once exhausted, but must be closed if abandoned early.
+	 *
+	 * @param withMetadata populate the cached data of each child from the listing
+	 * @param signal cancels the children query, which then throws [android.os.OperationCanceledException]
+	 * @see listFiles
+	 * @see useFiles
+	 */
+	@JvmOverloads
+	fun iterateFiles(withMetadata: Boolean = false, signal: CancellationSignal? = null): DocumentIterator {
+		return if (isFileScheme(uri)) {
+			DocumentIterator.ofFile(this, mContext, File(uri.path), withMetadata)
+		} else {
+			if (!Util.hasLollipop())
+				throw UnsupportedOperationException()
+
+			DocumentIterator.ofCursor(this, mContext,
+				DocumentsContractApi21.queryChildren(mContext, uri, childProjection(withMetadata), signal), withMetadata)
+		}
+	}
+
+	/**
+	 * Returns the files contained in this directory that pass `options`, in the order they
+	 * specify.  Rows are filtered and sorted on the raw columns of the children query, so
+	 * children that are filtered out never have a uri or file created.
+	 *
+	 * @param withMetadata populate the cached data of each child from the listing
+	 * @param signal cancels the children query, which then throws [android.os.OperationCanceledException]
+	 * @see ListOptions
+	 */
+	@JvmOverloads
+	fun listFiles(options: ListOptions, withMetadata: Boolean = false, signal: CancellationSignal? = null): Array<UsefulDocumentFile> {
+		iterateFiles(options, withMetadata, signal).use { children ->
+			val results = ArrayList<UsefulDocumentFile>(children.count)
+			children.forEach { results.add(it) }
+			return results.toTypedArray()
+		}
+	}
+
+	/**
+	 * A lazy iterator over the files contained in this directory that pass `options`, in the
+	 * order they specify.  Filtering and sorting happen up front on the cursor, children are
+	 * then created one at a time.
+	 *
+	 * @see listFiles
+	 */
+	@JvmOverloads
+	fun iterateFiles(options: ListOptions, withMetadata: Boolean = false, signal: CancellationSignal? = null): DocumentIterator {
+		return if (isFileScheme(uri)) {
+			DocumentIterator.ofFile(this, mContext, File(uri.path), withMetadata, options)
+		} else {
+			if (!Util.hasLollipop())
+				throw UnsupportedOperationException()
+
+			DocumentIterator.ofCursor(this, mContext,
+				DocumentsContractApi21.queryChildren(mContext, uri, options.projection(withMetadata),
+					options.selection, options.selectionArgs, options.sortOrder, signal), withMetadata, options)
+		}
+	}
+
+	/**
+	 * Query a page of children through the provider's paging arguments, which the provider
+	 * may ignore, see [ChildPage].
+	 *
+	 * @return the page, or null if the query failed
+	 */
+	@TargetApi(Build.VERSION_CODES.O)
+	internal fun queryPage(offset: Int, limit: Int, withMetadata: Boolean, signal: CancellationSignal?): ChildPage? {
+		val childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(uri, DocumentsContract.getDocumentId(uri))
+		val args = Bundle()
+		args.putInt(ContentResolver.QUERY_ARG_OFFSET, offset)
+		args.putInt(ContentResolver.QUERY_ARG_LIMIT, limit)
+
+		val cursor = try {
+			ProviderInstrumentation.query(mContext.contentResolver, childrenUri, childProjection(withMetadata), args, signal)
+		} catch (e: OperationCanceledException) {
+			throw e
+		} catch (e: Exception) {
+			Log.w(TAG, "Failed query: $e")
+			null
+		} ?: return null
+
+		val honored = cursor.extras?.getStringArray(ContentResolver.EXTRA_HONORED_ARGS)
+		return ChildPage(DocumentIterator.ofCursor(this, mContext, cursor, withMetadata), cursor.count,
+			honored?.contains(ContentResolver.QUERY_ARG_LIMIT) == true,
+			honored?.contains(ContentResolver.QUERY_ARG_OFFSET) == true)
+	}
+
+	private fun childProjection(withMetadata: Boolean) =
+		if (withMetadata) METADATA_COLUMNS else arrayOf(DocumentsContract.Document.COLUMN_DOCUMENT_ID)
+
+	/**
+	 * Stream the children of this directory through `block`, closing the underlying cursor
+	 * when the block completes, even if the sequence was not fully consumed.
+	 *
+	 * @see iterateFiles
+	 */
+	inline fun <R> useFiles(withMetadata: Boolean = false, block: (Sequence<UsefulDocumentFile>) -> R): R {
+		return iterateFiles(withMetadata).use { block(it.asSequence()) }
+	}
+
+	/**
+	 * Open the underlying document, for file uris as well as documents.
+	 *
+	 * @throws FileNotFoundException if the document could not be opened
+	 */
+	@Throws(FileNotFoundException::class)
+	internal fun openDescriptor(mode: String): ParcelFileDescriptor {
+		return ProviderInstrumentation.openFileDescriptor(mContext.contentResolver, uri, mode)
+			?: throw FileNotFoundException("Failed to open $uri")
+	}
+
+	/**
+	 * Read the entire document.  The size is read first, from the descriptor or the cached
+	 * [length], so the array is allocated exactly once rather than grown while reading.
+	 *
+	 * @throws IOException if the document could not be read
+	 */
+	@Throws(IOException::class)
+	fun readBytes(): ByteArray {
+		openDescriptor("r").let { descriptor ->
+			val size = descriptor.statSize
+			val sizeHint = if (size >= 0) size else metadata()?.length?.takeIf { it > 0 } ?: -1
+			return ParcelFileDescriptor.AutoCloseInputStream(descriptor).use {
+				Util.toByteArray(it, sizeHint)
+			}
+		}
+	}
+
+	/**
+	 * Read the entire document into a read-only buffer.  When the document is backed by a
+	 * seekable file it is memory-mapped, avoiding a copy into the heap entirely, otherwise it
+	 * is read as [readBytes].
+	 *
+	 * @throws IOException if the document could not be read
+	 */
+	@Throws(IOException::class)
+	fun readBuffer(): ByteBuffer {
+		openDescriptor("r").let { descriptor ->
+			ParcelFileDescriptor.AutoCloseInputStream(descriptor).use { stream ->
+				val size = descriptor.statSize
+				if (size >= 0) {
+					try {
+						// Map the size of the file now rather than when stat was read, a document
+						// that changed in between would otherwise be truncated or fail to map.
+						// The mapping remains valid after the descriptor is closed
+						val channel = stream.channel
+						return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+					} catch (e: IOException) {
+						// Not mappable, such as a pipe, read it instead
+					}
+				}
+				val sizeHint = if (size >= 0) size else metadata()?.length?.takeIf { it > 0 } ?: -1
+				return ByteBuffer.wrap(Util.toByteArray(stream, sizeHint)).asReadOnlyBuffer()
+			}
+		}
+	}
+
+	/**
+	 * Open the document for positional reads backed by a small block cache with read-ahead.
+	 * Scattered reads, such as parsing the header and offsets of a TIFF, then cost a few
+	 * preads rather than a linear scan of a stream.  Close when done.
+	 *
+	 * @param blockSize bytes read and cached per block
+	 * @param cacheBlocks number of blocks to cache
+	 * @param readAheadBlocks blocks to read beyond the one requested on a miss
+	 * @throws IOException if the document could not be opened
+	 * @see RandomAccessDocument
+	 */
+	@JvmOverloads
+	@Throws(IOException::class)
+	fun openRandomAccess(blockSize: Int = RandomAccessDocument.DEFAULT_BLOCK_SIZE,
+						 cacheBlocks: Int = RandomAccessDocument.DEFAULT_CACHE_BLOCKS,
+						 readAheadBlocks: Int = RandomAccessDocument.DEFAULT_READ_AHEAD_BLOCKS): RandomAccessDocument {
+		return RandomAccessDocument(openDescriptor("r"), blockSize, cacheBlocks, readAheadBlocks)
+	}
+
+	/**
+	 * Read up to `length` bytes at `offset`.  This opens the document for a single read,
+	 * use [openRandomAccess] for several reads of the same document.
+	 *
+	 * @return the bytes read, shorter than `length` only at the end of the document
+	 * @throws IOException if the document could not be read
+	 */
+	@Throws(IOException::class)
+	fun read(offset: Long, length: Int): ByteArray {
+		return RandomAccessDocument.readOnce(openDescriptor("r"), offset, length)
+	}
+
+	/**
+	 * Copy this document into `targetDirectory` using the fastest path available.
+	 *
+	 * @param displayName name of the copy, defaults to the name of this document
+	 * @return the copy, or null if failed
+	 * @throws IllegalArgumentException if this is a directory
+	 * @see DocumentTransfer
+	 */
+	@JvmOverloads
+	fun copyTo(targetDirectory: UsefulDocumentFile, displayName: String? = null,
+			   listener: DocumentTransfer.ProgressListener? = null,
+			   signal: CancellationSignal? = null): UsefulDocumentFile? {
+		return DocumentTransfer(mContext, listener, signal).copy(this, targetDirectory, displayName)
+	}
+
+	/**
+	 * Move this document into `targetDirectory` using the fastest path available.
+	 *
+	 * @param displayName name of the moved document, defaults to the name of this document
+	 * @return the moved document, or null if failed
+	 * @throws IllegalArgumentException if this is a directory
+	 * @see DocumentTransfer
+	 */
+	@JvmOverloads
+	fun moveTo(targetDirectory: UsefulDocumentFile, displayName: String? = null,
+			   listener: DocumentTransfer.ProgressListener? = null,
+			   signal: CancellationSignal? = null): UsefulDocumentFile? {
+		return DocumentTransfer(mContext, listener, signal).move(this, targetDirectory, displayName)
+	}
+
+	/**
+	 * Watch the tree containing this document for external changes, invalidating the cached
+	 * listings and metadata of only the directories that changed.  Close the observer when
+	 * no longer needed.
+	 *
+	 * @see TreeObserver
+	 */
+	@JvmOverloads
+	fun watch(handler: Handler? = null, listener: TreeObserver.Listener? = null): TreeObserver {
+		return TreeObserver.watch(mContext, uri, handler, listener)
+	}
+
+	/**
+	 * Recursively visit the descendants of this directory, listing sibling subdirectories
+	 * concurrently.  Blocks until the walk is complete.
+	 *
+	 * @see DocumentWalker
+	 */
+	@JvmOverloads
+	fun walk(order: DocumentWalker.Order = DocumentWalker.Order.DEPTH_FIRST,
+			 maxDepth: Int = Int.MAX_VALUE,
+			 parallelism: Int = DocumentWalker.DEFAULT_PARALLELISM,
+			 filter: DocumentWalker.Filter? = null,
+			 visitor: DocumentWalker.Visitor) {
+		DocumentWalker(order, maxDepth, parallelism, filter).walk(this, visitor)
+	}
+
+	/**
+	 * Total size, counts and newest modified time of everything beneath this directory.
+	 * Subdirectories are listed concurrently with a minimal projection, and the stats of each
+	 * are memoized against its modified time, so repeat calls only list what changed or expired.
+	 * A directory that can't be listed leaves [DirectoryStats.isComplete] false.  Blocks until
+	 * complete.
+	 *
+	 * @see DirectoryStatsCache
+	 */
+	@JvmOverloads
+	fun stats(parallelism: Int = DocumentWalker.DEFAULT_PARALLELISM): DirectoryStats {
+		return DirectoryStats.compute(mContext, this, parallelism)
+	}
+
     /**
      * Renames this file to `displayName`.
      *
@@ -589,7 +1101,11 @@ val canWrite: Boolean
      * @see DocumentsContract.renameDocument
      */
     fun renameTo(displayName: String): Boolean {
-        return if (isFileScheme(uri)) renameToFile(displayName) else renameToUri(displayName)
+        val previous = uri
+        val renamed = if (isFileScheme(uri)) renameToFile(displayName) else renameToUri(displayName)
+        invalidateCaches(previous)
+        MetadataCache.invalidate(uri)
+        return renamed
     }
 
     private fun renameToFile(displayName: String): Boolean {
@@ -625,6 +1141,17 @@ val canWrite: Boolean
     companion object {
         private val TAG = UsefulDocumentFile::class.java.simpleName
 
+		/**
+		 * Every column required to populate [FileData] in a single query
+		 */
+		internal val METADATA_COLUMNS = arrayOf(
+			DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+			DocumentsContract.Document.COLUMN_MIME_TYPE,
+			DocumentsContract.Document.COLUMN_LAST_MODIFIED,
+			DocumentsContract.Document.COLUMN_SIZE,
+			DocumentsContract.Document.COLUMN_FLAGS,
+			DocumentsContract.Document.COLUMN_DISPLAY_NAME)
+
 		 @JvmStatic
 		 fun fromUri(c: Context, uri: Uri): UsefulDocumentFile {
             var uri = uri
@@ -634,9 +1161,32 @@ val canWrite: Boolean
             return UsefulDocumentFile(null, c, uri)
         }
 
-        private fun parseName(uri: Uri?): String? {
-            val pathParts = DocumentUtil.getPathSegments(uri)
-            return if (pathParts != null) pathParts[pathParts.size - 1] else null
+		/**
+		 * Resolve the metadata, including existence, of many documents at once.  Tree uris are
+		 * grouped by parent folder and each folder is answered with a single children query,
+		 * so the cost is about one query per distinct folder rather than per document.
+		 *
+		 * @return a file for every uri with its data cached, see [cacheFileData]
+		 */
+		@JvmStatic
+		fun resolve(c: Context, uris: Collection<Uri>): Map<Uri, UsefulDocumentFile> {
+			return BulkResolver.resolve(c, uris)
+		}
+
+		/**
+		 * Delete many documents at once, concurrently and with a limit per provider.
+		 *
+		 * @return a result for each file, in the order given
+		 * @see DocumentDeleter
+		 */
+		@JvmStatic
+		fun deleteAll(files: Collection<UsefulDocumentFile>): List<DocumentDeleter.Result> {
+			return DocumentDeleter().deleteAll(files)
+		}
+
+        internal fun parseName(uri: Uri?): String? {
+            val documentId = DocumentUtil.getDocumentId(uri ?: return null) ?: return null
+            return DocumentId.parse(documentId).name
         }
 
         private fun parseType(mFile: File): String? {
@@ -648,7 +1198,7 @@ val canWrite: Boolean
             }
         }
 
-        private fun getTypeForName(name: String): String {
+        internal fun getTypeForName(name: String): String {
             val lastDot = name.lastIndexOf('.')
             if (lastDot >= 0) {
                 val extension = name.substring(lastDot + 1).lowercase()
@@ -660,23 +1210,6 @@ val canWrite: Boolean
 
             return "application/octet-stream"
         }
-
-        private fun deleteContents(dir: File): Boolean {
-            val files = dir.listFiles()
-            var success = true
-            if (files != null) {
-                for (file in files) {
-                    if (file.isDirectory) {
-                        success = success and deleteContents(file)
-                    }
-                    if (!file.delete()) {
-                        Log.w(TAG, "Failed to delete $file")
-                        success = false
-                    }
-                }
-            }
-            return success
-        }
 	 }
 
 	fun isFileScheme(uri: Uri): Boolean {
@@ -688,7 +1221,7 @@ val canWrite: Boolean
  * POJO for storing all file data in one go.  If a user is interested in more than one
  * field at a time this will reduce many queries to a single query
  */
-private data class FileData (
+internal data class FileData (
     val canRead: Boolean = false,
     val canWrite: Boolean = false,
     val exists: Boolean = false,
@@ -699,5 +1232,78 @@ private data class FileData (
     val lastModified: Long = 0,
     val length: Long = 0,
     val name: String = "error",
-    val parent: Uri? = null
-)
+    val parent: Uri? = null,
+    val flags: Int = 0
+) {
+	companion object {
+		/**
+		 * Data of a document that does not exist, the defaults match what the individual
+		 * queries return for a missing document
+		 */
+		fun missing(uri: Uri) = FileData(uri = uri, name = UsefulDocumentFile.parseName(uri) ?: "error")
+
+		/**
+		 * Data of a document from the raw values of its [DocumentsContract.Document] columns
+		 */
+		fun fromColumns(uri: Uri, parent: Uri?, rawType: String?, flags: Int, lastModified: Long, length: Long,
+						name: String?, readPerm: Boolean, writePerm: Boolean): FileData {
+			val hasMime = !TextUtils.isEmpty(rawType)
+			val supportsDelete = flags and DocumentsContract.Document.FLAG_SUPPORTS_DELETE != 0
+			val supportsCreate = flags and DocumentsContract.Document.FLAG_DIR_SUPPORTS_CREATE != 0
+			val supportsWrite = flags and DocumentsContract.Document.FLAG_SUPPORTS_WRITE != 0
+			val isDirectory = DocumentsContract.Document.MIME_TYPE_DIR == rawType
+			val type = if (isDirectory) null else rawType
+			val isFile = if (isDirectory) false else hasMime
+
+			return FileData(
+				readPerm && hasMime,
+				writePerm && (supportsDelete || isDirectory && supportsCreate || hasMime && supportsWrite),
+				true,
+				type,
+				uri,
+				isDirectory,
+				isFile,
+				lastModified,
+				length,
+				name ?: UsefulDocumentFile.parseName(uri) ?: "error",
+				parent,
+				flags
+			)
+		}
+	}
+}
+
+/**
+ * Builds [FileData] from the rows of a cursor queried with (a subset of)
+ * [UsefulDocumentFile.METADATA_COLUMNS].  Column indices are resolved once so a listing
+ * can be read row by row without repeated lookups.  Missing columns fall back to defaults.
+ */
+internal class FileDataReader(
+	private val cursor: Cursor,
+	private val readPerm: Boolean,
+	private val writePerm: Boolean) {
+	private val idIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_DOCUMENT_ID)
+	private val typeIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_MIME_TYPE)
+	private val modifiedIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED)
+	private val sizeIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_SIZE)
+	private val flagsIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_FLAGS)
+	private val nameIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_DISPLAY_NAME)
+
+	fun documentId(): String? = if (idIndex < 0 || cursor.isNull(idIndex)) null else cursor.getString(idIndex)
+
+	/**
+	 * Read the current row of the cursor
+	 */
+	fun read(uri: Uri, parent: Uri?): FileData {
+		return FileData.fromColumns(
+			uri,
+			parent,
+			if (typeIndex < 0) null else cursor.getString(typeIndex),
+			if (flagsIndex < 0) 0 else cursor.getInt(flagsIndex),
+			if (modifiedIndex < 0) 0 else cursor.getLong(modifiedIndex),
+			if (sizeIndex < 0) 0 else cursor.getLong(sizeIndex),
+			if (nameIndex < 0) null else cursor.getString(nameIndex),
+			readPerm,
+			writePerm)
+	}
+}
@@ -53,6 +53,8 @@ import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -117,7 +119,97 @@ public class Util
 
     // copy from InputStream
     //-----------------------------------------------------------------------
-    private static final int DEFAULT_BUFFER_SIZE = 1024 * 4;
+    private static final int DEFAULT_BUFFER_SIZE = 1024 * 64;
+
+    private static volatile int sCopyBufferSize = DEFAULT_BUFFER_SIZE;
+    private static final ThreadLocal<byte[]> sCopyBuffer = new ThreadLocal<>();
+    private static final ThreadLocal<ByteBuffer> sDirectCopyBuffer = new ThreadLocal<>();
+
+    private static volatile boolean sCopyStatsEnabled = false;
+    private static final CopyStats sCopyStats = new CopyStats();
+
+    /**
+     * Set the size of the buffer each thread reuses for copies.  Buffers of a different size
+     * are replaced on their next use.
+     *
+     * @param size buffer size in bytes
+     */
+    public static void setCopyBufferSize(int size)
+    {
+        if (size <= 0)
+            throw new IllegalArgumentException("Buffer size must be positive");
+        sCopyBufferSize = size;
+    }
+
+    public static int getCopyBufferSize()
+    {
+        return sCopyBufferSize;
+    }
+
+    /**
+     * Enable the aggregate counters of every copy, see {@link #getCopyStats()}.
+     * Disabled by default so copies don't pay for timing.
+     */
+    public static void setCopyStatsEnabled(boolean enabled)
+    {
+        sCopyStatsEnabled = enabled;
+    }
+
+    /**
+     * @return aggregate counters of every copy since enabled
+     * @see #setCopyStatsEnabled(boolean)
+     */
+    public static CopyStats getCopyStats()
+    {
+        return sCopyStats;
+    }
+
+    /**
+     * Take the buffer of this thread.  It is removed until released so a nested copy on the
+     * same thread allocates rather than overwrites it.
+     */
+    static byte[] acquireCopyBuffer()
+    {
+        byte[] buffer = sCopyBuffer.get();
+        if (buffer == null || buffer.length != sCopyBufferSize)
+            return new byte[sCopyBufferSize];
+        sCopyBuffer.set(null);
+        return buffer;
+    }
+
+    static void releaseCopyBuffer(byte[] buffer)
+    {
+        sCopyBuffer.set(buffer);
+    }
+
+    private static ByteBuffer acquireDirectCopyBuffer()
+    {
+        ByteBuffer buffer = sDirectCopyBuffer.get();
+        if (buffer == null || buffer.capacity() != sCopyBufferSize)
+            return ByteBuffer.allocateDirect(sCopyBufferSize);
+        sDirectCopyBuffer.set(null);
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * @return the start time if any counters will be recorded, otherwise 0
+     */
+    static long startCopy(CopyStats stats)
+    {
+        return stats != null || sCopyStatsEnabled ? System.nanoTime() : 0;
+    }
+
+    static void endCopy(CopyStats stats, long count, long start)
+    {
+        if (start == 0)
+            return;
+        long elapsed = System.nanoTime() - start;
+        if (stats != null)
+            stats.record(count, elapsed);
+        if (sCopyStatsEnabled)
+            sCopyStats.record(count, elapsed);
+    }
     /**
      * Copy bytes from an <code>InputStream</code> to an
      * <code>OutputStream</code>.
@@ -162,13 +254,103 @@ public class Util
      */
     public static long copyLarge(InputStream input, OutputStream output)
             throws IOException {
-        byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+        return copyLarge(input, output, (CopyStats) null);
+    }
+
+    /**
+     * Copy bytes from a large (over 2GB) <code>InputStream</code> to an
+     * <code>OutputStream</code>, recording the throughput of the copy.
+     * <p>
+     * This method reuses a buffer per thread, see {@link #setCopyBufferSize(int)}.
+     *
+     * @param input  the <code>InputStream</code> to read from
+     * @param output  the <code>OutputStream</code> to write to
+     * @param stats  counters to record this copy in, may be null
+     * @return the number of bytes copied
+     * @throws IOException if an I/O error occurs
+     */
+    public static long copyLarge(InputStream input, OutputStream output, CopyStats stats)
+            throws IOException {
+        byte[] buffer = acquireCopyBuffer();
+        try {
+            return copyLarge(input, output, buffer, stats);
+        } finally {
+            releaseCopyBuffer(buffer);
+        }
+    }
+
+    /**
+     * Copy bytes from a large (over 2GB) <code>InputStream</code> to an
+     * <code>OutputStream</code> through the given buffer.
+     *
+     * @param input  the <code>InputStream</code> to read from
+     * @param output  the <code>OutputStream</code> to write to
+     * @param buffer  the buffer to use for the copy
+     * @return the number of bytes copied
+     * @throws IOException if an I/O error occurs
+     * @since Commons IO 2.2
+     */
+    public static long copyLarge(InputStream input, OutputStream output, byte[] buffer)
+            throws IOException {
+        return copyLarge(input, output, buffer, null);
+    }
+
+    private static long copyLarge(InputStream input, OutputStream output, byte[] buffer,
+            CopyStats stats) throws IOException {
+        long start = startCopy(stats);
         long count = 0;
         int n = 0;
         while (-1 != (n = input.read(buffer))) {
             output.write(buffer, 0, n);
             count += n;
         }
+        endCopy(stats, count, start);
+        return count;
+    }
+
+    /**
+     * Copy bytes between channels through a direct <code>ByteBuffer</code>, avoiding the
+     * copies through the heap a stream copy requires.
+     * <p>
+     * This method reuses a buffer per thread, see {@link #setCopyBufferSize(int)}.
+     *
+     * @param input  the channel to read from
+     * @param output  the channel to write to
+     * @return the number of bytes copied
+     * @throws IOException if an I/O error occurs
+     */
+    public static long copyLarge(ReadableByteChannel input, WritableByteChannel output)
+            throws IOException {
+        return copyLarge(input, output, null);
+    }
+
+    /**
+     * Copy bytes between channels through a direct <code>ByteBuffer</code>, recording the
+     * throughput of the copy.
+     *
+     * @param input  the channel to read from
+     * @param output  the channel to write to
+     * @param stats  counters to record this copy in, may be null
+     * @return the number of bytes copied
+     * @throws IOException if an I/O error occurs
+     */
+    public static long copyLarge(ReadableByteChannel input, WritableByteChannel output,
+            CopyStats stats) throws IOException {
+        ByteBuffer buffer = acquireDirectCopyBuffer();
+        long start = startCopy(stats);
+        long count = 0;
+        try {
+            while (input.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    count += output.write(buffer);
+                }
+                buffer.clear();
+            }
+        } finally {
+            sDirectCopyBuffer.set(buffer);
+        }
+        endCopy(stats, count, start);
         return count;
     }
 
@@ -191,6 +373,52 @@ public class Util
         return output.toByteArray();
     }
 
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * Get the contents of an <code>InputStream</code> as a <code>byte[]</code> when the size
+     * is known in advance, such as from {@link ParcelFileDescriptor#getStatSize()}.  The array
+     * is allocated once rather than grown and copied.
+     * <p>
+     * The hint need not be exact, a stream that ends early is truncated and one that continues
+     * past the hint is read to the end.
+     *
+     * @param input  the <code>InputStream</code> to read from
+     * @param sizeHint  expected number of bytes, negative if unknown
+     * @return the requested byte array
+     * @throws IOException if an I/O error occurs
+     */
+    public static byte[] toByteArray(InputStream input, long sizeHint) throws IOException {
+        if (sizeHint < 0 || sizeHint > MAX_ARRAY_SIZE)
+            return toByteArray(input);
+
+        byte[] result = new byte[(int) sizeHint];
+        int offset = 0;
+        int n;
+        while (offset < result.length
+                && -1 != (n = input.read(result, offset, result.length - offset))) {
+            offset += n;
+        }
+        if (offset < result.length)
+            return Arrays.copyOf(result, offset);
+
+        // Check if the content grew beyond the hint
+        int next = input.read();
+        if (next == -1)
+            return result;
+
+        ByteArrayOutputStream remainder = new ByteArrayOutputStream();
+        remainder.write(next);
+        copy(input, remainder);
+        return concat(result, remainder.toByteArray());
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
     /**
      * Returns intent that  opens app in Google Play or Amazon Appstore
      *
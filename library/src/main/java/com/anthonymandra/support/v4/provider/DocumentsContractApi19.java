@@ -22,10 +22,14 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.provider.DocumentsContract;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.anthonymandra.framework.ProviderInstrumentation;
+
 import java.io.FileNotFoundException;
 
 /**
@@ -119,7 +123,7 @@ public class    DocumentsContractApi19 {
     public static boolean delete(Context context, Uri self) {
         try
         {
-            return DocumentsContract.deleteDocument(context.getContentResolver(), self);
+            return ProviderInstrumentation.deleteDocument(context.getContentResolver(), self);
         }
         catch (FileNotFoundException e)
         {
@@ -128,13 +132,22 @@ public class    DocumentsContractApi19 {
     }
 
     public static boolean exists(Context context, Uri self) {
+        return exists(context, self, null);
+    }
+
+    /**
+     * @param signal cancels the query, which then throws {@link OperationCanceledException}
+     */
+    public static boolean exists(Context context, Uri self, CancellationSignal signal) {
         final ContentResolver resolver = context.getContentResolver();
 
         Cursor c = null;
         try {
-            c = resolver.query(self, new String[] {
-                    DocumentsContract.Document.COLUMN_DOCUMENT_ID }, null, null, null);
+            c = ProviderInstrumentation.query(resolver, self, new String[] {
+                    DocumentsContract.Document.COLUMN_DOCUMENT_ID }, null, null, null, signal);
             return c.getCount() > 0;
+        } catch (OperationCanceledException e) {
+            throw e;
         } catch (Exception e) {
 //            Log.w(TAG, "Failed query: " + e);
             return false;
@@ -149,7 +162,7 @@ public class    DocumentsContractApi19 {
 
         Cursor c = null;
         try {
-            c = resolver.query(self, new String[] { column }, null, null, null);
+            c = ProviderInstrumentation.query(resolver, self, new String[] { column }, null, null, null);
             if (c.moveToFirst() && !c.isNull(0)) {
                 return c.getString(0);
             } else {
@@ -174,7 +187,7 @@ public class    DocumentsContractApi19 {
 
         Cursor c = null;
         try {
-            c = resolver.query(self, new String[] { column }, null, null, null);
+            c = ProviderInstrumentation.query(resolver, self, new String[] { column }, null, null, null);
             if (c.moveToFirst() && !c.isNull(0)) {
                 return c.getLong(0);
             } else {
@@ -20,9 +20,14 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.provider.DocumentsContract;
 import android.util.Log;
 
+import com.anthonymandra.framework.ProviderInstrumentation;
+import com.anthonymandra.framework.TreeUriFactory;
+
 import java.util.ArrayList;
 
 /**
@@ -34,7 +39,7 @@ public class DocumentsContractApi21 {
     public static Uri createFile(Context context, Uri self, String mimeType,
             String displayName) {
         try {
-            return DocumentsContract.createDocument(context.getContentResolver(), self, mimeType,
+            return ProviderInstrumentation.createDocument(context.getContentResolver(), self, mimeType,
                     displayName);
         } catch (Exception e) {
             return null;
@@ -55,15 +60,15 @@ public class DocumentsContractApi21 {
         final Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(self,
                 DocumentsContract.getDocumentId(self));
         final ArrayList<Uri> results = new ArrayList<Uri>();
+        final TreeUriFactory uriFactory = TreeUriFactory.forTree(self);
 
         Cursor c = null;
         try {
-            c = resolver.query(childrenUri, new String[] {
+            c = ProviderInstrumentation.query(resolver, childrenUri, new String[] {
                     DocumentsContract.Document.COLUMN_DOCUMENT_ID }, null, null, null);
             while (c.moveToNext()) {
                 final String documentId = c.getString(0);
-                final Uri documentUri = DocumentsContract.buildDocumentUriUsingTree(self,
-                        documentId);
+                final Uri documentUri = uriFactory.buildDocumentUri(documentId);
                 results.add(documentUri);
             }
         } catch (Exception e) {
@@ -75,9 +80,52 @@ public class DocumentsContractApi21 {
         return results.toArray(new Uri[results.size()]);
     }
 
+    /**
+     * Query the children of a tree document with an arbitrary projection.  This allows callers to
+     * gather all of the data they need about the children in a single resolver call rather than
+     * requesting a uri here and querying each child individually.
+     *
+     * @return cursor over the children, which the caller must close, or null if the query failed
+     */
+    public static Cursor queryChildren(Context context, Uri self, String[] projection) {
+        return queryChildren(context, self, projection, null);
+    }
+
+    /**
+     * @param signal cancels the query, which then throws {@link OperationCanceledException}
+     * @see #queryChildren(Context, Uri, String[])
+     */
+    public static Cursor queryChildren(Context context, Uri self, String[] projection,
+            CancellationSignal signal) {
+        return queryChildren(context, self, projection, null, null, null, signal);
+    }
+
+    /**
+     * Most providers, ExternalStorageProvider among them, ignore the selection and sort order
+     * of a children query, so callers must not rely on either being applied.
+     *
+     * @param signal cancels the query, which then throws {@link OperationCanceledException}
+     * @see #queryChildren(Context, Uri, String[])
+     */
+    public static Cursor queryChildren(Context context, Uri self, String[] projection,
+            String selection, String[] selectionArgs, String sortOrder, CancellationSignal signal) {
+        final ContentResolver resolver = context.getContentResolver();
+        final Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(self,
+                DocumentsContract.getDocumentId(self));
+        try {
+            return ProviderInstrumentation.query(resolver, childrenUri, projection, selection,
+                    selectionArgs, sortOrder, signal);
+        } catch (OperationCanceledException e) {
+            throw e;
+        } catch (Exception e) {
+            Log.w(TAG, "Failed query: " + e);
+            return null;
+        }
+    }
+
     public static Uri renameTo(Context context, Uri self, String displayName) {
         try {
-            return DocumentsContract.renameDocument(context.getContentResolver(), self,
+            return ProviderInstrumentation.renameDocument(context.getContentResolver(), self,
                     displayName);
         } catch (Exception e) {
             return null;
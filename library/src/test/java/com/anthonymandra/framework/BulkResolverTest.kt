@@ -0,0 +1,36 @@
+package com.anthonymandra.framework
+
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Companion.ROOT_DOCUMENT_ID
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class BulkResolverTest : FakeProviderTest() {
+
+	@Test
+	fun bulkResolutionCostsOneQueryPerFolder() {
+		val a = provider.addDirectory(ROOT_DOCUMENT_ID, "a")
+		val b = provider.addDirectory(ROOT_DOCUMENT_ID, "b")
+		val uris = (0 until 4).flatMap { listOf(provider.addFile(a, "a$it"), provider.addFile(b, "b$it")) }
+			.map { provider.documentUri(it) } + provider.documentUri("$a/missing")
+		provider.resetCalls()
+
+		val resolved = UsefulDocumentFile.resolve(context, uris)
+		assertEquals(2, provider.queryCount)
+		assertEquals(uris.size, resolved.size)
+		assertFalse(resolved.getValue(provider.documentUri("$a/missing")).exists())
+		assertTrue(uris.dropLast(1).all { resolved.getValue(it).exists() })
+		assertEquals(2, provider.queryCount)
+	}
+
+	@Test
+	fun disabledCacheCountsNoMisses() {
+		val uris = (0 until 3).map { provider.documentUri(provider.addFile(ROOT_DOCUMENT_ID, "a$it")) }
+		MetadataCache.resetStats()
+
+		assertEquals(3, UsefulDocumentFile.resolve(context, uris).size)
+		assertEquals(0L, MetadataCache.missCount)
+		assertEquals(0L, MetadataCache.hitCount)
+	}
+}
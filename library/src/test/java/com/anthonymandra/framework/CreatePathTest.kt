@@ -0,0 +1,58 @@
+package com.anthonymandra.framework
+
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Companion.ROOT_DOCUMENT_ID
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Operation
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class CreatePathTest : FakeProviderTest() {
+
+	@Test
+	fun createdIntermediateDirectoriesExist() {
+		val folder = file("${ROOT_DOCUMENT_ID}a/b")
+		assertFalse(folder.exists())
+		assertTrue(file("${ROOT_DOCUMENT_ID}a/b/new.jpg").create())
+		assertTrue(folder.exists())
+		assertTrue(folder.isDirectory)
+	}
+
+	@Test
+	fun createPathCostsOneCreatePerFileOnceTheFolderExists() {
+		assertNotNull(root.createPath("2026/10/16/IMG_0.jpg", "image/jpeg"))
+		provider.resetCalls()
+
+		for (i in 1..5)
+			assertNotNull(root.createPath("2026/10/16/IMG_$i.jpg", "image/jpeg"))
+		assertEquals(0, provider.queryCount)
+		assertEquals(5, provider.callCount(Operation.CREATE))
+		assertEquals(5, provider.callCount())
+	}
+
+	@Test
+	fun deletedFolderIsCreatedAgain() {
+		assertNotNull(root.createPath("a/b/IMG_0.jpg", "image/jpeg"))
+		assertTrue(file("${ROOT_DOCUMENT_ID}a").delete())
+		provider.resetCalls()
+
+		assertNotNull(root.createPath("a/b/IMG_1.jpg", "image/jpeg"))
+		assertEquals(3, provider.callCount(Operation.CREATE))
+	}
+
+	@Test
+	fun folderRemovedElsewhereIsCreatedAgain() {
+		assertNotNull(root.createPath("2026/10/16/IMG_0.jpg", "image/jpeg"))
+		// Another app, so KnownDirectories still holds the folders
+		provider.removeDocument("${ROOT_DOCUMENT_ID}2026")
+
+		val created = root.createPath("2026/10/16/IMG_1.jpg", "image/jpeg")
+		assertNotNull(created)
+		assertTrue(provider.exists("${ROOT_DOCUMENT_ID}2026/10/16/IMG_1.jpg"))
+
+		provider.removeDocument("${ROOT_DOCUMENT_ID}2026")
+		assertTrue(file("${ROOT_DOCUMENT_ID}2026/10/16/IMG_2.jpg").create())
+		assertTrue(provider.exists("${ROOT_DOCUMENT_ID}2026/10/16/IMG_2.jpg"))
+	}
+}
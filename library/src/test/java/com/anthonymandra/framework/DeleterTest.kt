@@ -0,0 +1,113 @@
+package com.anthonymandra.framework
+
+import android.net.Uri
+import android.os.CancellationSignal
+import android.os.OperationCanceledException
+import com.anthonymandra.framework.DocumentDeleter.Status
+import com.anthonymandra.framework.testing.FakeDocumentsProvider
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Companion.ROOT_DOCUMENT_ID
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Operation
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import java.io.File
+
+class DeleterTest : FakeProviderTest() {
+
+	private fun addFiles(count: Int) = List(count) { provider.addFile(ROOT_DOCUMENT_ID, "$it.jpg") }
+		.also { provider.resetCalls() }
+
+	@Test
+	fun eachFileHasItsOwnResult() {
+		val ids = addFiles(4)
+		// A missing document counts as deleted, so the provider refuses instead
+		provider.fault = FakeDocumentsProvider.Fault { operation, documentId ->
+			if (operation == Operation.DELETE && documentId == ids[1]) IllegalStateException("Refused") else null
+		}
+
+		val results = DocumentDeleter().deleteAll(ids.map { file(it) })
+		assertEquals(ids.map { provider.documentUri(it) }, results.map { it.file.uri })
+		assertEquals(listOf(Status.DELETED, Status.FAILED, Status.DELETED, Status.DELETED), results.map { it.status })
+		assertEquals(listOf(false, true, false, false), ids.map { provider.exists(it) })
+	}
+
+	@Test
+	fun concurrencyIsLimitedPerAuthority() {
+		val ids = addFiles(8)
+		provider.setLatency(100, Operation.DELETE)
+
+		val results = DocumentDeleter(parallelism = 8, perAuthority = 2).deleteAll(ids.map { file(it) })
+		assertTrue(results.all { it.isDeleted })
+		assertEquals(2, provider.peakConcurrency(Operation.DELETE))
+	}
+
+	@Test
+	fun deletesRunConcurrently() {
+		val ids = addFiles(8)
+		provider.setLatency(100, Operation.DELETE)
+
+		DocumentDeleter(parallelism = 4, perAuthority = 4).deleteAll(ids.map { file(it) })
+		assertTrue(provider.peakConcurrency(Operation.DELETE) > 1)
+	}
+
+	@Test
+	fun cancelledDeletesAreNotStarted() {
+		val ids = addFiles(3)
+		val signal = CancellationSignal()
+		provider.fault = FakeDocumentsProvider.Fault { operation, _ ->
+			if (operation == Operation.DELETE)
+				signal.cancel()
+			null
+		}
+
+		val results = DocumentDeleter(parallelism = 1, signal = signal).deleteAll(ids.map { file(it) })
+		assertEquals(listOf(Status.DELETED, Status.CANCELLED, Status.CANCELLED), results.map { it.status })
+		assertEquals(1, provider.callCount(Operation.DELETE))
+		assertEquals(listOf(false, true, true), ids.map { provider.exists(it) })
+	}
+
+	@Test
+	fun cancelledTreeIsForgottenAnyway() {
+		val directory = File(context.cacheDir, "tree")
+		File(directory, "a/b").mkdirs()
+		File(directory, "a/b/c.jpg").writeBytes(ByteArray(10))
+		val tree = UsefulDocumentFile.fromUri(context, Uri.fromFile(directory))
+		val child = Uri.fromFile(File(directory, "a"))
+		KnownDirectories.add(tree.uri)
+		KnownDirectories.add(child)
+
+		val signal = CancellationSignal().apply { cancel() }
+		try {
+			tree.delete(signal)
+			fail("Delete was not cancelled")
+		} catch (e: OperationCanceledException) {
+			// Expected
+		}
+		assertTrue(directory.exists())
+		assertFalse(KnownDirectories.contains(tree.uri))
+		assertFalse(KnownDirectories.contains(child))
+		directory.deleteRecursively()
+	}
+
+	@Test
+	fun fileTreeIsDeletedRecursively() {
+		val directory = File(context.cacheDir, "tree")
+		for (i in 0 until 4) {
+			for (j in 0 until 3) {
+				val leaf = File(directory, "$i/$j").apply { mkdirs() }
+				repeat(5) { File(leaf, "$it.jpg").writeBytes(ByteArray(it)) }
+			}
+			File(directory, "$i.jpg").writeBytes(ByteArray(i))
+		}
+		val single = File(context.cacheDir, "single.jpg").apply { writeBytes(ByteArray(1)) }
+
+		val results = DocumentDeleter().deleteAll(listOf(
+			UsefulDocumentFile.fromUri(context, Uri.fromFile(directory)),
+			UsefulDocumentFile.fromUri(context, Uri.fromFile(single))))
+		assertEquals(listOf(Status.DELETED, Status.DELETED), results.map { it.status })
+		assertFalse(directory.exists())
+		assertFalse(single.exists())
+	}
+}
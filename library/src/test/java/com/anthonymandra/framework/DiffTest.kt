@@ -0,0 +1,158 @@
+package com.anthonymandra.framework
+
+import com.anthonymandra.framework.testing.FakeDocumentsProvider
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Companion.ROOT_DOCUMENT_ID
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Operation
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.File
+import java.io.FileNotFoundException
+
+class DiffTest : FakeProviderTest() {
+
+	private val snapshotFile get() = File(context.cacheDir, "snapshot")
+
+	private fun diff(snapshot: TreeSnapshot, skipUnchangedDirectories: Boolean = false,
+					 reportUnchanged: Boolean = false): List<String> {
+		val changes = ArrayList<String>()
+		TreeDiff(snapshot, skipUnchangedDirectories, reportUnchanged).run(context) { changes.add(it.toString()) }
+		return changes
+	}
+
+	/**
+	 * Removals follow the rest of their directory, so only the set of changes is compared
+	 */
+	private fun assertChanges(expected: List<String>, snapshot: TreeSnapshot) {
+		assertEquals(expected.sorted(), diff(snapshot).sorted())
+	}
+
+	@Test
+	fun addedDocumentsAreReported() {
+		provider.addFile(ROOT_DOCUMENT_ID, "a.jpg")
+		TreeSnapshot.capture(context, root, snapshotFile).use { snapshot ->
+			provider.addFile(ROOT_DOCUMENT_ID, "b.jpg")
+			val folder = provider.addDirectory(ROOT_DOCUMENT_ID, "folder")
+			provider.addFile(folder, "c.jpg")
+
+			assertChanges(listOf("ADDED fake:b.jpg", "ADDED $folder", "ADDED $folder/c.jpg"), snapshot)
+		}
+	}
+
+	@Test
+	fun removedDirectoriesIncludeTheirSubtrees() {
+		val folder = provider.addDirectory(ROOT_DOCUMENT_ID, "folder")
+		val nested = provider.addDirectory(folder, "nested")
+		provider.addFile(nested, "a.jpg")
+		provider.addFile(folder, "b.jpg")
+		val kept = provider.addFile(ROOT_DOCUMENT_ID, "c.jpg")
+		val file = provider.addFile(ROOT_DOCUMENT_ID, "d.jpg")
+		TreeSnapshot.capture(context, root, snapshotFile).use { snapshot ->
+			provider.removeDocument(folder)
+			provider.removeDocument(file)
+
+			assertChanges(listOf("REMOVED $folder", "REMOVED $nested", "REMOVED $nested/a.jpg",
+				"REMOVED $folder/b.jpg", "REMOVED $file"), snapshot)
+			assertTrue(provider.exists(kept))
+		}
+	}
+
+	@Test
+	fun modifiedBySizeOrTime() {
+		val time = 1_600_000_000_000L
+		val resized = provider.addFile(ROOT_DOCUMENT_ID, "a.jpg", content = ByteArray(1), lastModified = time)
+		val touched = provider.addFile(ROOT_DOCUMENT_ID, "b.jpg", content = ByteArray(1), lastModified = time)
+		provider.addFile(ROOT_DOCUMENT_ID, "c.jpg", content = ByteArray(1), lastModified = time)
+		TreeSnapshot.capture(context, root, snapshotFile).use { snapshot ->
+			provider.setContent(resized, ByteArray(2), time)
+			provider.setLastModified(touched, time + 1000)
+
+			assertEquals(listOf("MODIFIED $resized", "MODIFIED $touched"), diff(snapshot))
+		}
+	}
+
+	@Test
+	fun fileReplacedByDirectoryIsRemovedThenAdded() {
+		val file = provider.addFile(ROOT_DOCUMENT_ID, "a")
+		TreeSnapshot.capture(context, root, snapshotFile).use { snapshot ->
+			provider.removeDocument(file)
+			val folder = provider.addDirectory(ROOT_DOCUMENT_ID, "a")
+			provider.addFile(folder, "b.jpg")
+			assertEquals(file, folder)
+
+			assertEquals(listOf("REMOVED $file", "ADDED $folder", "ADDED $folder/b.jpg"), diff(snapshot))
+		}
+	}
+
+	@Test
+	fun unsortedListingIsSortedWhereItBreaksOrder() {
+		val time = 1_600_000_000_000L
+		// The provider lists children as inserted, ignoring the requested order
+		val c = provider.addFile(ROOT_DOCUMENT_ID, "c", content = ByteArray(1), lastModified = time)
+		val a = provider.addFile(ROOT_DOCUMENT_ID, "a", content = ByteArray(1), lastModified = time)
+		val d = provider.addFile(ROOT_DOCUMENT_ID, "d", content = ByteArray(1), lastModified = time)
+		TreeSnapshot.capture(context, root, snapshotFile).use { snapshot ->
+			assertEquals(emptyList<String>(), diff(snapshot))
+
+			// a passes for removed until it turns up after c
+			provider.setContent(a, ByteArray(2), time)
+			provider.removeDocument(d)
+			val b = provider.addFile(ROOT_DOCUMENT_ID, "b")
+
+			assertChanges(listOf("MODIFIED $a", "ADDED $b", "REMOVED $d"), snapshot)
+			assertEquals(listOf("UNCHANGED $c", "MODIFIED $a", "ADDED $b", "REMOVED $d"),
+				diff(snapshot, reportUnchanged = true))
+		}
+	}
+
+	@Test
+	fun unchangedDirectoriesCanBeSkipped() {
+		val time = 1_600_000_000_000L
+		val folder = provider.addDirectory(ROOT_DOCUMENT_ID, "folder")
+		val file = provider.addFile(folder, "a.jpg", content = ByteArray(1), lastModified = time)
+		TreeSnapshot.capture(context, root, snapshotFile).use { snapshot ->
+			// Rewritten in place, which leaves the directory's modified time alone
+			provider.setContent(file, ByteArray(2), time)
+
+			assertEquals(listOf("MODIFIED $file"), diff(snapshot))
+
+			provider.resetCalls()
+			assertEquals(emptyList<String>(), diff(snapshot, skipUnchangedDirectories = true))
+			assertEquals(0, provider.callCount(Operation.QUERY_CHILDREN, folder))
+
+			assertEquals(listOf("UNCHANGED $folder", "UNCHANGED $file"),
+				diff(snapshot, skipUnchangedDirectories = true, reportUnchanged = true))
+			assertEquals(0, provider.callCount(Operation.QUERY_CHILDREN, folder))
+
+			assertEquals(listOf("UNCHANGED $folder", "MODIFIED $file"), diff(snapshot, reportUnchanged = true))
+		}
+	}
+
+	@Test
+	fun unlistableDirectoryIsReported() {
+		val folder = provider.addDirectory(ROOT_DOCUMENT_ID, "folder")
+		provider.addFile(folder, "a")
+		TreeSnapshot.capture(context, root, snapshotFile).use { snapshot ->
+			provider.fault = FakeDocumentsProvider.Fault { operation, documentId ->
+				if (operation == Operation.QUERY_CHILDREN && documentId == folder) FileNotFoundException() else null
+			}
+
+			assertEquals(listOf("FAILED $folder"), diff(snapshot))
+		}
+	}
+
+	@Test
+	fun directoryUnlistedInTheSnapshotIsReported() {
+		val folder = provider.addDirectory(ROOT_DOCUMENT_ID, "folder")
+		provider.addFile(folder, "a")
+		provider.fault = FakeDocumentsProvider.Fault { operation, documentId ->
+			if (operation == Operation.QUERY_CHILDREN && documentId == folder) FileNotFoundException() else null
+		}
+		TreeSnapshot.capture(context, root, snapshotFile).use { snapshot ->
+			provider.fault = null
+
+			// Rather than reporting the children it never saw as added
+			assertEquals(listOf("FAILED $folder"), diff(snapshot))
+		}
+	}
+}
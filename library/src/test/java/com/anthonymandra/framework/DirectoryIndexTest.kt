@@ -0,0 +1,62 @@
+package com.anthonymandra.framework
+
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Companion.ROOT_DOCUMENT_ID
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Operation
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class DirectoryIndexTest : FakeProviderTest() {
+
+	@Test
+	fun findFileIsAnsweredFromTheIndex() {
+		repeat(50) { provider.addFile(ROOT_DOCUMENT_ID, "file_$it") }
+		provider.resetCalls()
+
+		provider.assertQueries(1) { assertNotNull(root.findFile("file_0")) }
+		provider.assertQueries(0) {
+			for (i in 1 until 50)
+				assertNotNull(root.findFile("file_$i"))
+			assertNull(root.findFile("missing"))
+		}
+	}
+
+	@Test
+	fun createdChildInvalidatesTheIndex() {
+		provider.addFile(ROOT_DOCUMENT_ID, "a")
+		assertNull(root.findFile("b"))
+
+		assertNotNull(root.createFile(null, "b"))
+		assertNotNull(root.findFile("b"))
+	}
+
+	@Test
+	fun deletedDirectoryInvalidatesDescendantIndexes() {
+		val a = provider.addDirectory(ROOT_DOCUMENT_ID, "a")
+		val b = provider.addDirectory(a, "b")
+		provider.addFile(b, "old")
+		assertNotNull(file(b).findFile("old"))
+
+		assertTrue(file(a).delete())
+		provider.addFile(provider.addDirectory(provider.addDirectory(ROOT_DOCUMENT_ID, "a"), "b"), "new")
+		assertNull(file(b).findFile("old"))
+		assertNotNull(file(b).findFile("new"))
+	}
+
+	@Test
+	fun invalidatingTheRootDropsTheIndexesBeneathIt() {
+		val a = provider.addDirectory(ROOT_DOCUMENT_ID, "a")
+		provider.addFile(a, "x")
+		assertNotNull(root.findFile("a"))
+		assertNotNull(file(a).findFile("x"))
+
+		// Children of a root id follow its separator directly, 'fake:a' rather than 'fake:/a'
+		DirectoryIndex.invalidateTree(root.uri)
+		provider.resetCalls()
+		assertNotNull(root.findFile("a"))
+		assertNotNull(file(a).findFile("x"))
+		assertEquals(2, provider.callCount(Operation.QUERY_CHILDREN))
+	}
+}
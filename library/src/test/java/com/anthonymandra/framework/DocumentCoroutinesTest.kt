@@ -0,0 +1,144 @@
+package com.anthonymandra.framework
+
+import android.content.ContentResolver
+import android.database.Cursor
+import android.net.Uri
+import android.os.CancellationSignal
+import android.os.OperationCanceledException
+import com.anthonymandra.framework.testing.FakeDocumentsProvider
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Operation
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExecutorCoroutineDispatcher
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.cancelAndJoin
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class DocumentCoroutinesTest : FakeProviderTest() {
+
+	private lateinit var dispatcher: ExecutorCoroutineDispatcher
+
+	@Before
+	fun setUpDispatcher() {
+		dispatcher = Executors.newSingleThreadExecutor { Thread(it, IO_THREAD) }.asCoroutineDispatcher()
+		DocumentDispatchers.io = dispatcher
+	}
+
+	@After
+	fun restoreDispatcher() {
+		DocumentDispatchers.io = Dispatchers.IO
+		dispatcher.close()
+	}
+
+	/**
+	 * Capture the signal of each query on its way to the provider, the provider only sees the
+	 * query without it
+	 */
+	private fun recordSignals(): List<CancellationSignal?> {
+		val signals = Collections.synchronizedList(ArrayList<CancellationSignal?>())
+		ProviderInstrumentation.setTransport(object : ProviderInstrumentation.Transport by ProviderInstrumentation.RESOLVER {
+			override fun query(resolver: ContentResolver, uri: Uri, projection: Array<String>?, selection: String?,
+							   selectionArgs: Array<String>?, sortOrder: String?, signal: CancellationSignal?): Cursor? {
+				signals.add(signal)
+				return ProviderInstrumentation.RESOLVER.query(resolver, uri, projection, selection, selectionArgs, sortOrder, signal)
+			}
+		})
+		return signals
+	}
+
+	@Test
+	fun cancellingTheCoroutineCancelsTheQuery() {
+		addPhotos(3)
+		val signals = recordSignals()
+		val started = CountDownLatch(1)
+		// Hold the listing in the provider until its signal is cancelled, as a provider
+		// checking the signal between rows would
+		provider.fault = FakeDocumentsProvider.Fault { operation, _ ->
+			if (operation != Operation.QUERY_CHILDREN)
+				return@Fault null
+			started.countDown()
+			val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5)
+			while (signals.lastOrNull()?.isCanceled != true && System.nanoTime() < deadline)
+				Thread.sleep(10)
+			if (signals.last()!!.isCanceled) OperationCanceledException() else null
+		}
+
+		runBlocking {
+			val listing = launch(start = CoroutineStart.UNDISPATCHED) { root.awaitListFiles() }
+			assertTrue(started.await(5, TimeUnit.SECONDS))
+			val start = System.nanoTime()
+			listing.cancelAndJoin()
+			assertTrue(listing.isCancelled)
+			assertTrue("Waited for the query to finish", System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4))
+		}
+		assertEquals(1, signals.size)
+		assertTrue(signals[0]!!.isCanceled)
+		assertEquals(1, provider.callCount(Operation.QUERY_CHILDREN))
+	}
+
+	@Test
+	fun completedQueryLeavesItsSignalAlone() {
+		addPhotos(3)
+		val signals = recordSignals()
+
+		val children = runBlocking { root.awaitListFiles() }
+		assertEquals(3, children.size)
+		assertEquals(1, signals.size)
+		assertFalse(signals[0]!!.isCanceled)
+	}
+
+	@Test
+	fun operationsRunOnTheDocumentDispatcher() {
+		val threads = Collections.synchronizedSet(HashSet<String>())
+		provider.fault = FakeDocumentsProvider.Fault { _, _ ->
+			threads.add(Thread.currentThread().name)
+			null
+		}
+
+		runBlocking {
+			root.awaitListFiles(true)
+			val created = root.awaitCreateFile("image/jpeg", "a.jpg")!!
+			root.awaitCreateDirectory("folder")
+			root.awaitCreatePath("b/c.jpg", "image/jpeg")
+			file(created.documentId!!).awaitExists()
+			file(created.documentId!!).awaitCacheFileData()
+			created.awaitRenameTo("d.jpg")
+			created.awaitDelete()
+		}
+		assertTrue(provider.callCount(Operation.QUERY_CHILDREN) > 0)
+		assertTrue(provider.callCount(Operation.QUERY_DOCUMENT) > 0)
+		assertTrue(provider.callCount(Operation.CREATE) > 0)
+		assertTrue(provider.callCount(Operation.RENAME) > 0)
+		assertTrue(provider.callCount(Operation.DELETE) > 0)
+		assertEquals(setOf(IO_THREAD), threads)
+	}
+
+	@Test
+	fun explicitDispatcherIsUsed() {
+		val threads = Collections.synchronizedSet(HashSet<String>())
+		provider.fault = FakeDocumentsProvider.Fault { _, _ ->
+			threads.add(Thread.currentThread().name)
+			null
+		}
+		Executors.newSingleThreadExecutor { Thread(it, OTHER_THREAD) }.asCoroutineDispatcher().use { other ->
+			runBlocking { root.awaitListFiles(dispatcher = other) }
+		}
+		assertEquals(setOf(OTHER_THREAD), threads)
+	}
+
+	companion object {
+		private const val IO_THREAD = "documents-io"
+		private const val OTHER_THREAD = "documents-other"
+	}
+}
@@ -0,0 +1,105 @@
+package com.anthonymandra.framework
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class DocumentIdTest {
+
+	@Test
+	fun rootWithoutSeparator() {
+		val id = DocumentId.parse("primary")
+		assertTrue(id.isRoot)
+		assertEquals("primary", id.root)
+		assertEquals("", id.path)
+		assertNull(id.name)
+		assertEquals(0, id.segmentCount)
+		assertNull(id.parent)
+		assertNull(id.getNeighbor("b"))
+		assertEquals("primary/a", id.getChild("a").toString())
+	}
+
+	@Test
+	fun rootWithSeparator() {
+		val id = DocumentId.parse("primary:")
+		assertTrue(id.isRoot)
+		assertEquals("primary", id.root)
+		assertEquals("", id.path)
+		assertNull(id.name)
+		assertEquals(0, id.segmentCount)
+		assertNull(id.parent)
+		assertNull(id.getNeighbor("b"))
+		assertEquals("primary:a", id.getChild("a").toString())
+	}
+
+	@Test
+	fun childOfRoot() {
+		val id = DocumentId.parse("primary:a")
+		assertFalse(id.isRoot)
+		assertEquals("primary", id.root)
+		assertEquals("a", id.path)
+		assertEquals("a", id.name)
+		assertEquals(1, id.segmentCount)
+		assertEquals("primary:", id.parent.toString())
+		assertTrue(id.parent!!.isRoot)
+		assertEquals("primary:b", id.getNeighbor("b").toString())
+		assertEquals("primary:a/c", id.getChild("c").toString())
+	}
+
+	@Test
+	fun nestedPath() {
+		val id = DocumentId.parse("0000-0000:folder/sub/file.ext")
+		assertFalse(id.isRoot)
+		assertEquals("0000-0000", id.root)
+		assertEquals("folder/sub/file.ext", id.path)
+		assertEquals("file.ext", id.name)
+		assertEquals(3, id.segmentCount)
+		assertEquals("0000-0000:folder/sub", id.parent.toString())
+		assertEquals("0000-0000:folder", id.parent!!.parent.toString())
+		assertEquals("0000-0000:", id.parent!!.parent!!.parent.toString())
+		assertEquals("0000-0000:folder/sub/other.ext", id.getNeighbor("other.ext").toString())
+		assertEquals("0000-0000:folder/sub/file.ext/x", id.getChild("x").toString())
+	}
+
+	@Test
+	fun separatorWithinThePathIsKept() {
+		val id = DocumentId.parse("primary:a:b/c:d")
+		assertEquals("primary", id.root)
+		assertEquals("a:b/c:d", id.path)
+		assertEquals("c:d", id.name)
+		assertEquals("primary:a:b", id.parent.toString())
+	}
+
+	@Test
+	fun equalIdsAreEqual() {
+		assertEquals(DocumentId.parse("primary:a"), DocumentId.parse("primary:b").getNeighbor("a"))
+		assertEquals(DocumentId.parse("primary:a").hashCode(), DocumentId.parse("primary:b").getNeighbor("a").hashCode())
+		assertFalse(DocumentId.parse("primary:") == DocumentId.parse("primary"))
+	}
+
+	@Test
+	fun rootsAreSharedUpToTheCap() {
+		assertSame(DocumentId.parse("shared:a").root, DocumentId.parse("shared:b/c").root)
+
+		// Beyond the cap roots are no longer shared, but still parsed
+		for (i in 0 until 32) {
+			val root = "root$i"
+			assertEquals(root, DocumentId.parse("$root:a").root)
+			assertEquals(root, DocumentId.parse("$root:b").root)
+			assertEquals(root, DocumentId.parse(root).root)
+		}
+		assertSame(DocumentId.parse("shared:a").root, DocumentId.parse("shared:d").root)
+	}
+
+	@Test
+	fun idSegmentsSplitAtTheRoot() {
+		assertArrayEquals(arrayOf("primary"), DocumentUtil.getIdSegments("primary"))
+		assertArrayEquals(arrayOf("primary"), DocumentUtil.getIdSegments("primary:"))
+		assertArrayEquals(arrayOf("primary", "a"), DocumentUtil.getIdSegments("primary:a"))
+		assertArrayEquals(arrayOf("primary", "a/b:c"), DocumentUtil.getIdSegments("primary:a/b:c"))
+	}
+}
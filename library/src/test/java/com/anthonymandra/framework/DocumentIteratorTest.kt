@@ -0,0 +1,54 @@
+package com.anthonymandra.framework
+
+import android.database.MatrixCursor
+import android.provider.DocumentsContract
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Companion.ROOT_DOCUMENT_ID
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class DocumentIteratorTest : FakeProviderTest() {
+
+	@Test
+	fun iterationStopsEarlyWithoutReadingTheRest() {
+		addPhotos(10)
+
+		val first = root.useFiles { children -> children.take(3).toList() }
+		assertEquals(3, first.size)
+		assertEquals(1, provider.queryCount)
+	}
+
+	@Test
+	fun completeListingHasNotFailed() {
+		addPhotos(3)
+
+		val children = root.iterateFiles()
+		assertEquals(3, children.asSequence().count())
+		assertFalse(children.failed)
+	}
+
+	@Test
+	fun missingCursorHasFailed() {
+		val children = DocumentIterator.ofCursor(root, context, null, false)
+		assertFalse(children.hasNext())
+		assertTrue(children.failed)
+	}
+
+	@Test
+	fun cursorFailureEndsIterationWithTheChildrenRead() {
+		val cursor = object : MatrixCursor(arrayOf(DocumentsContract.Document.COLUMN_DOCUMENT_ID)) {
+			override fun onMove(oldPosition: Int, newPosition: Int): Boolean {
+				if (newPosition == 2)
+					throw IllegalStateException("Provider died")
+				return super.onMove(oldPosition, newPosition)
+			}
+		}
+		repeat(5) { cursor.addRow(arrayOf("${ROOT_DOCUMENT_ID}IMG_$it.jpg")) }
+
+		val children = DocumentIterator.ofCursor(root, context, cursor, false)
+		assertEquals(2, children.asSequence().count())
+		assertTrue(children.failed)
+		assertTrue(cursor.isClosed)
+	}
+}
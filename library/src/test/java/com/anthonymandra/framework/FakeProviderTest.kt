@@ -0,0 +1,73 @@
+package com.anthonymandra.framework
+
+import android.content.ComponentName
+import android.content.Context
+import android.content.IntentFilter
+import android.provider.DocumentsContract
+import com.anthonymandra.framework.testing.FakeDocumentsProvider
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Companion.ROOT_DOCUMENT_ID
+import org.junit.After
+import org.junit.Before
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import org.robolectric.Shadows.shadowOf
+
+/**
+ * Runs the library against a [FakeDocumentsProvider] with the process-wide caches emptied
+ * before each test, so call counts only reflect the test itself.  Instrumentation installed
+ * by a test is removed after it.
+ */
+@RunWith(RobolectricTestRunner::class)
+abstract class FakeProviderTest {
+	protected lateinit var context: Context
+	protected lateinit var provider: FakeDocumentsProvider
+
+	/** The root of the tree, as granted through ACTION_OPEN_DOCUMENT_TREE */
+	protected lateinit var root: UsefulDocumentFile
+
+	@Before
+	fun setUpProvider() {
+		context = RuntimeEnvironment.application
+		val info = FakeDocumentsProvider.providerInfo(AUTHORITY).apply {
+			packageName = context.packageName
+			applicationInfo = context.applicationInfo
+		}
+		provider = Robolectric.buildContentProvider(FakeDocumentsProvider::class.java)
+			.create(info)
+			.get()
+		// DocumentsContract.isDocumentUri only accepts authorities that resolve PROVIDER_INTERFACE
+		shadowOf(context.packageManager).apply {
+			addOrUpdateProvider(info)
+			addIntentFilterForProvider(ComponentName(context, FakeDocumentsProvider::class.java),
+				IntentFilter(DocumentsContract.PROVIDER_INTERFACE))
+		}
+		clearCaches()
+		root = UsefulDocumentFile.fromUri(context, provider.treeUri())
+	}
+
+	@After
+	fun clearCaches() {
+		MetadataCache.clear()
+		DirectoryIndex.clear()
+		KnownDirectories.clear()
+		DirectoryStatsCache.clear()
+		ProviderInstrumentation.setListener(null)
+		ProviderInstrumentation.setTransport(null)
+	}
+
+	protected fun file(documentId: String) = UsefulDocumentFile.fromUri(context, provider.documentUri(documentId))
+
+	/**
+	 * Add `count` images to the root, IMG_n.jpg being n bytes, and forget the calls made
+	 */
+	protected fun addPhotos(count: Int) {
+		repeat(count) { provider.addFile(ROOT_DOCUMENT_ID, "IMG_$it.jpg", "image/jpeg", ByteArray(it)) }
+		provider.resetCalls()
+	}
+
+	companion object {
+		const val AUTHORITY = "com.anthonymandra.framework.test.fakedocuments"
+	}
+}
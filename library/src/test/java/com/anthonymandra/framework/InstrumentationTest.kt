@@ -0,0 +1,136 @@
+package com.anthonymandra.framework
+
+import android.content.ContentResolver
+import android.net.Uri
+import android.os.CancellationSignal
+import android.os.ParcelFileDescriptor
+import com.anthonymandra.framework.ProviderInstrumentation.Operation
+import com.anthonymandra.framework.testing.FakeDocumentsProvider
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Companion.ROOT_DOCUMENT_ID
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class InstrumentationTest : FakeProviderTest() {
+
+	private data class Call(val operation: Operation, val authority: String?, val projection: List<String>?,
+							val rows: Int, val bytes: Long, val success: Boolean)
+
+	private val calls = ArrayList<Call>()
+
+	private fun record() {
+		ProviderInstrumentation.setListener { operation, authority, projection, rows, bytes, _, success ->
+			calls.add(Call(operation, authority, projection?.toList(), rows, bytes, success))
+		}
+	}
+
+	private fun calls(operation: Operation) = calls.filter { it.operation == operation }
+
+	@Test
+	fun queryReportsItsRowsAndProjection() {
+		addPhotos(3)
+		record()
+
+		assertEquals(3, root.listFiles(true).size)
+		val query = calls(Operation.QUERY).single()
+		assertEquals(AUTHORITY, query.authority)
+		assertEquals(3, query.rows)
+		assertNotNull(query.projection)
+		assertEquals(-1L, query.bytes)
+		assertTrue(query.success)
+	}
+
+	@Test
+	fun failedQueryIsReported() {
+		record()
+		provider.failNext(FakeDocumentsProvider.Operation.QUERY_CHILDREN)
+
+		assertEquals(0, root.listFiles().size)
+		assertFalse(calls(Operation.QUERY).single().success)
+	}
+
+	@Test
+	fun mutationsAreReportedByOperation() {
+		record()
+
+		val created = root.createFile("image/jpeg", "a.jpg")!!
+		assertTrue(created.renameTo("b.jpg"))
+		assertTrue(created.delete())
+		for (operation in listOf(Operation.CREATE, Operation.RENAME, Operation.DELETE)) {
+			val call = calls(operation).single()
+			assertEquals(AUTHORITY, call.authority)
+			assertEquals(-1, call.rows)
+			assertTrue(call.success)
+		}
+	}
+
+	@Test
+	fun openReportsTheSizeOfTheDocument() {
+		val content = ByteArray(10) { it.toByte() }
+		val document = file(provider.addFile(ROOT_DOCUMENT_ID, "a.bin", content = content))
+		record()
+
+		assertArrayEquals(content.copyOfRange(2, 6), document.read(2, 4))
+		val open = calls(Operation.OPEN).single()
+		assertEquals(AUTHORITY, open.authority)
+		assertEquals(10L, open.bytes)
+		assertTrue(open.success)
+	}
+
+	@Test
+	fun statSizeIsOnlyReadForAListener() {
+		val uri = provider.documentUri(provider.addFile(ROOT_DOCUMENT_ID, "a.bin", content = ByteArray(10)))
+		val opened = ArrayList<CountingDescriptor>()
+		ProviderInstrumentation.setTransport(object : ProviderInstrumentation.Transport by ProviderInstrumentation.RESOLVER {
+			override fun openFileDescriptor(resolver: ContentResolver, uri: Uri, mode: String, signal: CancellationSignal?): ParcelFileDescriptor {
+				return CountingDescriptor(ProviderInstrumentation.RESOLVER.openFileDescriptor(resolver, uri, mode, signal)).also { opened.add(it) }
+			}
+		})
+
+		ProviderInstrumentation.openFileDescriptor(context.contentResolver, uri, "r")!!.close()
+		assertEquals(0, opened.single().statSizeCalls)
+
+		record()
+		ProviderInstrumentation.openFileDescriptor(context.contentResolver, uri, "r")!!.close()
+		assertEquals(1, opened.last().statSizeCalls)
+		assertEquals(10L, calls(Operation.OPEN).single().bytes)
+	}
+
+	@Test
+	fun statsHistogramBucketsByPowersOfTwo() {
+		val stats = ProviderStats()
+		for (nanos in listOf(100L, 1_000L, 1_000_000L))
+			stats.onCall(Operation.QUERY, AUTHORITY, null, 5, -1, nanos, true)
+		stats.onCall(Operation.OPEN, null, null, -1, 64, 10, false)
+
+		val query = stats.get(AUTHORITY, Operation.QUERY)
+		assertEquals(3L, query.count)
+		assertEquals(15L, query.rows)
+		assertEquals(128L, query.getPercentileNanos(0.01))
+		assertEquals(1024L, query.getPercentileNanos(0.5))
+		// The top bucket is bounded by the slowest call
+		assertEquals(1_000_000L, query.getPercentileNanos(1.0))
+		assertEquals(1_000_000L, query.maxNanos)
+
+		val open = stats.get(null, Operation.OPEN)
+		assertEquals(1L, open.failures)
+		assertEquals(64L, open.bytes)
+		assertEquals(setOf(AUTHORITY, ProviderStats.NO_AUTHORITY), stats.authorities)
+		assertEquals(4L, Operation.values().sumOf { stats.get(it).count })
+	}
+
+	/**
+	 * Counts the reads of the size of a descriptor
+	 */
+	private class CountingDescriptor(wrapped: ParcelFileDescriptor) : ParcelFileDescriptor(wrapped) {
+		var statSizeCalls = 0
+
+		override fun getStatSize(): Long {
+			statSizeCalls++
+			return super.getStatSize()
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package com.anthonymandra.framework
+
+import android.content.ContentResolver
+import android.database.Cursor
+import android.database.CursorWrapper
+import android.net.Uri
+import android.os.CancellationSignal
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Companion.ROOT_DOCUMENT_ID
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class ListOptionsTest : FakeProviderTest() {
+
+	@Test
+	fun nameGlobIgnoresCaseAsSqlLikeDoes() {
+		provider.addFile(ROOT_DOCUMENT_ID, "summer.JPG")
+		provider.addFile(ROOT_DOCUMENT_ID, "ÉTÉ.jpg")
+
+		fun names(glob: String) = root.listFiles(ListOptions.Builder().nameGlob(glob).build()).map { it.name }
+		assertEquals(listOf("summer.JPG"), names("SUMMER.jpg"))
+		assertEquals(listOf("ÉTÉ.jpg"), names("ÉTÉ.*"))
+		// LIKE only folds ASCII, so neither does the local filter
+		assertEquals(emptyList<String>(), names("été.jpg"))
+	}
+
+	@Test
+	fun filteredListingCostsOneQuery() {
+		addPhotos(5)
+		provider.addFile(ROOT_DOCUMENT_ID, "notes.txt", "text/plain")
+		provider.addDirectory(ROOT_DOCUMENT_ID, "folder")
+		provider.resetCalls()
+
+		val options = ListOptions.Builder()
+			.mimeTypePrefix("image/*")
+			.sizeRange(1, 3)
+			.sortBy(ListOptions.SortBy.SIZE, true)
+			.build()
+		val names = provider.assertQueries(1) { root.listFiles(options).map { it.name } }
+		assertEquals(listOf("IMG_3.jpg", "IMG_2.jpg", "IMG_1.jpg"), names)
+	}
+
+	@Test
+	fun unsortedFilterReadsRowsAsReached() {
+		addPhotos(50)
+		var rowsRead = 0
+		ProviderInstrumentation.setTransport(object : ProviderInstrumentation.Transport by ProviderInstrumentation.RESOLVER {
+			override fun query(resolver: ContentResolver, uri: Uri, projection: Array<String>?, selection: String?,
+							   selectionArgs: Array<String>?, sortOrder: String?, signal: CancellationSignal?): Cursor? {
+				val cursor = ProviderInstrumentation.RESOLVER.query(resolver, uri, projection, selection, selectionArgs, sortOrder, signal)
+					?: return null
+				return object : CursorWrapper(cursor) {
+					override fun moveToNext(): Boolean {
+						rowsRead++
+						return super.moveToNext()
+					}
+
+					override fun moveToPosition(position: Int): Boolean {
+						rowsRead++
+						return super.moveToPosition(position)
+					}
+				}
+			}
+		})
+
+		val options = ListOptions.Builder().sizeRange(2, Long.MAX_VALUE).build()
+		root.iterateFiles(options).use { children ->
+			assertEquals("IMG_2.jpg", children.next().name)
+		}
+		// IMG_0 and IMG_1 are rejected on the way, the other 47 are never read
+		assertEquals(3, rowsRead)
+	}
+}
@@ -0,0 +1,87 @@
+package com.anthonymandra.framework
+
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Companion.ROOT_DOCUMENT_ID
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class MetadataCacheTest : FakeProviderTest() {
+
+	@Test
+	fun createdDocumentExistsOnTheSameHandle() {
+		val created = file("${ROOT_DOCUMENT_ID}new.jpg")
+		assertFalse(created.exists())
+		assertTrue(created.create())
+		assertTrue(created.exists())
+		assertTrue(provider.exists("${ROOT_DOCUMENT_ID}new.jpg"))
+	}
+
+	@Test
+	fun handlesDoNotShareMetadataByDefault() {
+		val id = provider.addFile(ROOT_DOCUMENT_ID, "own.jpg")
+		provider.resetCalls()
+
+		assertEquals("own.jpg", file(id).name)
+		assertEquals("own.jpg", file(id).name)
+		assertEquals(2, provider.queryCount)
+		assertEquals(0, MetadataCache.size)
+	}
+
+	@Test
+	fun handlesShareMetadataOnceEnabled() = withSharedCache {
+		val id = provider.addFile(ROOT_DOCUMENT_ID, "shared.jpg", "image/jpeg", ByteArray(7))
+		provider.resetCalls()
+
+		provider.assertQueries(1) {
+			assertEquals(7L, file(id).length)
+			assertEquals("shared.jpg", file(id).name)
+		}
+	}
+
+	@Test
+	fun existsSeesDocumentsRemovedElsewhere() = withSharedCache {
+		val id = provider.addFile(ROOT_DOCUMENT_ID, "removed.jpg")
+		assertEquals("removed.jpg", file(id).name)
+		assertTrue(file(id).exists())
+
+		provider.removeDocument(id)
+		assertFalse(file(id).exists())
+	}
+
+	@Test
+	fun handleDoesNotPinTheSharedEntry() = withSharedCache {
+		val id = provider.addFile(ROOT_DOCUMENT_ID, "pinned.jpg")
+		val handle = file(id)
+		assertEquals("pinned.jpg", handle.name)
+
+		provider.removeDocument(id)
+		assertFalse(handle.exists())
+		// Invalidated, the next read asks the provider rather than the handle's first answer
+		MetadataCache.invalidate(handle.uri)
+		assertFalse(handle.isFile)
+	}
+
+	@Test
+	fun listingsLeaveTheSharedCacheAlone() = withSharedCache {
+		MetadataCache.maxSize = 4
+		val id = provider.addFile(ROOT_DOCUMENT_ID, "kept.jpg")
+		assertEquals("kept.jpg", file(id).name)
+		addPhotos(10)
+		MetadataCache.resetStats()
+
+		assertEquals(11, root.listFiles(true).size)
+		assertEquals(1, MetadataCache.size)
+		assertEquals(0L, MetadataCache.evictionCount)
+	}
+
+	private fun withSharedCache(block: () -> Unit) {
+		val previous = MetadataCache.maxSize
+		MetadataCache.maxSize = 16
+		try {
+			block()
+		} finally {
+			MetadataCache.maxSize = previous
+		}
+	}
+}
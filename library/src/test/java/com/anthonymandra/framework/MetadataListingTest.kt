@@ -0,0 +1,25 @@
+package com.anthonymandra.framework
+
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Operation
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class MetadataListingTest : FakeProviderTest() {
+
+	@Test
+	fun listingWithMetadataCostsOneQuery() {
+		addPhotos(20)
+
+		val sizes = provider.assertQueries(1) {
+			root.listFiles(true).map {
+				assertTrue(it.name.startsWith("IMG_"))
+				assertEquals("image/jpeg", it.type)
+				assertTrue(it.lastModified > 0)
+				it.length
+			}
+		}
+		assertEquals((0L until 20L).toList(), sizes.sorted())
+		assertEquals(0, provider.callCount(Operation.QUERY_DOCUMENT))
+	}
+}
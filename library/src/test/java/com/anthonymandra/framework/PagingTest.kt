@@ -0,0 +1,106 @@
+package com.anthonymandra.framework
+
+import android.content.ContentResolver
+import android.database.Cursor
+import android.database.CursorWrapper
+import android.net.Uri
+import android.os.Bundle
+import android.os.CancellationSignal
+import com.anthonymandra.framework.testing.FakeDocumentsProvider
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Operation
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.fail
+import org.junit.Test
+import java.io.FileNotFoundException
+import java.io.IOException
+
+class PagingTest : FakeProviderTest() {
+
+	@Test
+	fun pagesAreChunkedFromOneCursorWhenPagingIsIgnored() {
+		addPhotos(250)
+
+		val pages = runBlocking { root.listFilesPaged(100).toList() }
+		assertEquals(listOf(100, 100, 50), pages.map { it.size })
+		assertEquals(1, provider.callCount(Operation.QUERY_CHILDREN))
+	}
+
+	@Test
+	fun pagesAreQueriedSeparatelyWhenPagingIsHonored() {
+		addPhotos(250)
+		provider.honoredPagingArgs = setOf(ContentResolver.QUERY_ARG_OFFSET, ContentResolver.QUERY_ARG_LIMIT)
+
+		val pages = runBlocking { root.listFilesPaged(100).toList() }
+		assertEquals(listOf(100, 100, 50), pages.map { it.size })
+		assertEquals(250, pages.flatten().map { it.uri }.toSet().size)
+		assertEquals(3, provider.callCount(Operation.QUERY_CHILDREN))
+	}
+
+	@Test
+	fun firstPageComesFirstWhenOnlyTheLimitIsHonored() {
+		addPhotos(250)
+		provider.honoredPagingArgs = setOf(ContentResolver.QUERY_ARG_LIMIT)
+
+		val pages = runBlocking { root.listFilesPaged(100).toList() }
+		assertEquals(listOf(100, 100, 50), pages.map { it.size })
+		assertEquals(250, pages.flatten().map { it.uri }.toSet().size)
+		assertEquals(2, provider.callCount(Operation.QUERY_CHILDREN))
+	}
+
+	/**
+	 * Collect the pages of `root`, expecting the flow to fail after them
+	 */
+	private fun pagesBeforeFailure(pageSize: Int): List<List<UsefulDocumentFile>> {
+		val pages = ArrayList<List<UsefulDocumentFile>>()
+		try {
+			runBlocking { root.listFilesPaged(pageSize).collect { pages.add(it) } }
+			fail("Listing completed after ${pages.size} pages")
+		} catch (e: IOException) {
+			// Expected
+		}
+		return pages
+	}
+
+	@Test
+	fun failedQueryIsAnError() {
+		addPhotos(250)
+		provider.failNext(Operation.QUERY_CHILDREN)
+
+		assertEquals(emptyList<Int>(), pagesBeforeFailure(100).map { it.size })
+	}
+
+	@Test
+	fun failedPageIsAnErrorAfterThePagesRead() {
+		addPhotos(250)
+		provider.honoredPagingArgs = setOf(ContentResolver.QUERY_ARG_OFFSET, ContentResolver.QUERY_ARG_LIMIT)
+		var queries = 0
+		provider.fault = FakeDocumentsProvider.Fault { operation, _ ->
+			if (operation == Operation.QUERY_CHILDREN && ++queries == 2) FileNotFoundException("Provider died") else null
+		}
+
+		assertEquals(listOf(100), pagesBeforeFailure(100).map { it.size })
+	}
+
+	@Test
+	fun cursorFailingPartWayIsAnErrorAfterThePagesRead() {
+		addPhotos(250)
+		// Paging queries pass arguments in a Bundle
+		ProviderInstrumentation.setTransport(object : ProviderInstrumentation.Transport by ProviderInstrumentation.RESOLVER {
+			override fun query(resolver: ContentResolver, uri: Uri, projection: Array<String>?, queryArgs: Bundle?,
+							   signal: CancellationSignal?): Cursor? {
+				val cursor = ProviderInstrumentation.RESOLVER.query(resolver, uri, projection, queryArgs, signal)
+				return object : CursorWrapper(cursor) {
+					override fun moveToNext(): Boolean {
+						if (position == 149)
+							throw IllegalStateException("Provider died")
+						return super.moveToNext()
+					}
+				}
+			}
+		})
+
+		assertEquals(listOf(100, 50), pagesBeforeFailure(100).map { it.size })
+	}
+}
@@ -0,0 +1,86 @@
+package com.anthonymandra.framework
+
+import android.net.Uri
+import android.provider.DocumentsContract
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Companion.ROOT_DOCUMENT_ID
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Operation
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+import java.io.File
+
+class ParentChainTest : FakeProviderTest() {
+
+	private fun UsefulDocumentFile.ancestorIds() = ancestors().asSequence().map { it.documentId }.toList()
+
+	@Test
+	fun ancestorsEndAtTheTreeRoot() {
+		val a = provider.addDirectory(ROOT_DOCUMENT_ID, "a")
+		val b = provider.addDirectory(a, "b")
+		val c = provider.addFile(b, "c.jpg")
+		provider.resetCalls()
+
+		val file = file(c)
+		assertEquals(listOf(b, a, ROOT_DOCUMENT_ID), file.ancestorIds())
+		assertEquals(provider.documentUri(b), file.parentFile!!.uri)
+		// Parsed from the ids, the provider isn't asked
+		assertEquals(0, provider.callCount(Operation.QUERY))
+	}
+
+	@Test
+	fun parentChainIsResolvedOnce() {
+		val a = provider.addDirectory(ROOT_DOCUMENT_ID, "a")
+		val file = file(provider.addFile(a, "b.jpg"))
+
+		val parent = file.parentFile!!
+		assertSame(parent, file.parentFile)
+		assertSame(parent.parentFile, file.parentFile!!.parentFile)
+
+		val ancestors = file.ancestors().asSequence().toList()
+		assertSame(parent, ancestors[0])
+		assertSame(parent.parentFile, ancestors[1])
+		assertEquals(2, ancestors.size)
+	}
+
+	@Test
+	fun treeRootHasNoParent() {
+		assertNull(root.parentFile)
+		assertEquals(emptyList<String>(), root.ancestorIds())
+	}
+
+	@Test
+	fun nestedTreeDoesNotEscapeItsGrant() {
+		val a = provider.addDirectory(ROOT_DOCUMENT_ID, "a")
+		val b = provider.addDirectory(a, "b")
+		val c = provider.addFile(b, "c.jpg")
+
+		val treeUri = provider.treeUri(a)
+		val top = UsefulDocumentFile.fromUri(context, treeUri)
+		assertNull(top.parentFile)
+
+		val file = UsefulDocumentFile.fromUri(context, DocumentsContract.buildDocumentUriUsingTree(treeUri, c))
+		assertEquals(listOf(b, a), file.ancestorIds())
+	}
+
+	@Test
+	fun documentOutsideOfATreeEndsAtItsRoot() {
+		val a = provider.addDirectory(ROOT_DOCUMENT_ID, "a")
+		val b = provider.addFile(a, "b.jpg")
+
+		val file = UsefulDocumentFile.fromUri(context, DocumentsContract.buildDocumentUri(AUTHORITY, b))
+		assertEquals(listOf(a, ROOT_DOCUMENT_ID), file.ancestorIds())
+		assertEquals(DocumentsContract.buildDocumentUri(AUTHORITY, a), file.parentFile!!.uri)
+	}
+
+	@Test
+	fun fileAncestorsEndAtTheFilesystemRoot() {
+		val directory = File(context.cacheDir, "a/b").apply { mkdirs() }
+		val file = UsefulDocumentFile.fromUri(context, Uri.fromFile(File(directory, "c.jpg")))
+
+		val ancestors = file.ancestors().asSequence().map { File(it.uri.path!!) }.toList()
+		assertEquals(directory, ancestors.first())
+		assertEquals(File("/"), ancestors.last())
+		assertNull(ancestors.last().parentFile)
+	}
+}
@@ -0,0 +1,141 @@
+package com.anthonymandra.framework
+
+import android.content.ContentResolver
+import android.net.Uri
+import android.os.CancellationSignal
+import android.os.ParcelFileDescriptor
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Companion.ROOT_DOCUMENT_ID
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Operation
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+
+class ReadTest : FakeProviderTest() {
+
+	@Test
+	fun singleReadReturnsExactlyTheRange() {
+		val content = ByteArray(100) { it.toByte() }
+		val document = file(provider.addFile(ROOT_DOCUMENT_ID, "a.bin", content = content))
+		provider.resetCalls()
+
+		assertArrayEquals(content.copyOfRange(10, 30), document.read(10, 20))
+		assertArrayEquals(content.copyOfRange(90, 100), document.read(90, 20))
+		assertEquals(0, document.read(100, 20).size)
+		assertEquals(3, provider.callCount(Operation.OPEN))
+	}
+
+	@Test
+	fun randomAccessServesNeighbouringReadsFromOneOpen() {
+		val content = ByteArray(64 * 1024) { it.toByte() }
+		val document = file(provider.addFile(ROOT_DOCUMENT_ID, "a.bin", content = content))
+		provider.resetCalls()
+
+		document.openRandomAccess().use {
+			assertArrayEquals(content.copyOfRange(0, 8), it.read(0, 8))
+			assertArrayEquals(content.copyOfRange(20_000, 20_100), it.read(20_000, 100))
+		}
+		assertEquals(1, provider.callCount(Operation.OPEN))
+	}
+
+	@Test
+	fun rangeOutsideTheBufferIsRejected() {
+		val document = file(provider.addFile(ROOT_DOCUMENT_ID, "a.bin", content = ByteArray(100)))
+		val buffer = ByteArray(10)
+
+		document.openRandomAccess().use {
+			fun assertRejected(offset: Int, length: Int) {
+				try {
+					it.read(0, buffer, offset, length)
+					fail("Read $length bytes at $offset into ${buffer.size}")
+				} catch (e: IllegalArgumentException) {
+					// Expected
+				}
+			}
+			assertRejected(-1, 5)
+			assertRejected(0, -1)
+			assertRejected(5, 6)
+			assertRejected(1, Int.MAX_VALUE)
+			assertEquals(5, it.read(0, buffer, 5, 5))
+		}
+	}
+
+	private val content = ByteArray(100_000) { it.toByte() }
+
+	private fun ByteBuffer.toArray() = ByteArray(remaining()).also { get(it) }
+
+	/**
+	 * Report `statSize` for every descriptor opened, as a pipe (-1) or a document that changed
+	 * after its size was read would
+	 */
+	private fun reportStatSize(statSize: Long) {
+		ProviderInstrumentation.setTransport(object : ProviderInstrumentation.Transport by ProviderInstrumentation.RESOLVER {
+			override fun openFileDescriptor(resolver: ContentResolver, uri: Uri, mode: String, signal: CancellationSignal?): ParcelFileDescriptor {
+				val descriptor = ProviderInstrumentation.RESOLVER.openFileDescriptor(resolver, uri, mode, signal)
+				return object : ParcelFileDescriptor(descriptor) {
+					override fun getStatSize() = statSize
+				}
+			}
+		})
+	}
+
+	@Test
+	fun readBytesUsesTheStatSize() {
+		val document = file(provider.addFile(ROOT_DOCUMENT_ID, "a.bin", content = content))
+		assertArrayEquals(content, document.readBytes())
+	}
+
+	@Test
+	fun readBufferMapsTheDocument() {
+		val document = file(provider.addFile(ROOT_DOCUMENT_ID, "a.bin", content = content))
+		val buffer = document.readBuffer()
+		assertTrue(buffer is MappedByteBuffer)
+		assertTrue(buffer.isReadOnly)
+		assertArrayEquals(content, buffer.toArray())
+	}
+
+	@Test
+	fun unknownSizeIsReadToTheEnd() {
+		val document = file(provider.addFile(ROOT_DOCUMENT_ID, "a.bin", content = content))
+		reportStatSize(-1)
+
+		assertArrayEquals(content, document.readBytes())
+		val buffer = document.readBuffer()
+		assertFalse(buffer is MappedByteBuffer)
+		assertArrayEquals(content, buffer.toArray())
+	}
+
+	@Test
+	fun documentThatGrewIsReadWhole() {
+		val document = file(provider.addFile(ROOT_DOCUMENT_ID, "a.bin", content = content))
+		reportStatSize(10)
+
+		assertArrayEquals(content, document.readBytes())
+		assertArrayEquals(content, document.readBuffer().toArray())
+	}
+
+	@Test
+	fun documentThatShrankIsReadToItsEnd() {
+		val document = file(provider.addFile(ROOT_DOCUMENT_ID, "a.bin", content = content))
+		reportStatSize(content.size + 5000L)
+
+		assertArrayEquals(content, document.readBytes())
+		assertArrayEquals(content, document.readBuffer().toArray())
+	}
+
+	@Test
+	fun documentRewrittenBetweenReadsIsReadAgain() {
+		val id = provider.addFile(ROOT_DOCUMENT_ID, "a.bin", content = content)
+		val document = file(id)
+		assertArrayEquals(content, document.readBytes())
+
+		val rewritten = content.copyOf(content.size / 2)
+		provider.setContent(id, rewritten)
+		assertArrayEquals(rewritten, document.readBytes())
+		assertArrayEquals(rewritten, document.readBuffer().toArray())
+	}
+}
@@ -0,0 +1,114 @@
+package com.anthonymandra.framework
+
+import com.anthonymandra.framework.testing.FakeDocumentsProvider
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Companion.ROOT_DOCUMENT_ID
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Operation
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Collections
+import java.util.IdentityHashMap
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinTask
+
+class StatsTest : FakeProviderTest() {
+
+	@After
+	fun restoreTtl() {
+		DirectoryStatsCache.ttlMillis = 60_000L
+	}
+
+	private fun addTree(): String {
+		val folder = provider.addDirectory(ROOT_DOCUMENT_ID, "folder")
+		provider.addFile(ROOT_DOCUMENT_ID, "a.jpg", "image/jpeg", ByteArray(3))
+		provider.addFile(folder, "b.jpg", "image/jpeg", ByteArray(4))
+		provider.resetCalls()
+		return folder
+	}
+
+	@Test
+	fun repeatStatsAreMemoized() {
+		addTree()
+
+		val stats = root.stats()
+		assertEquals(7L, stats.totalBytes)
+		assertEquals(2L, stats.fileCount)
+		assertEquals(1L, stats.directoryCount)
+		assertTrue(stats.isComplete)
+		assertEquals(2, provider.callCount(Operation.QUERY_CHILDREN))
+
+		provider.resetCalls()
+		assertEquals(7L, root.stats().totalBytes)
+		assertEquals(0, provider.callCount(Operation.QUERY_CHILDREN))
+	}
+
+	@Test
+	fun expiredStatsAreListedAgain() {
+		val folder = addTree()
+		DirectoryStatsCache.ttlMillis = 0
+		root.stats()
+
+		// Not seen by the memo of the root, whose own entries are unchanged
+		provider.addFile(folder, "c.jpg", "image/jpeg", ByteArray(5))
+		provider.resetCalls()
+		assertEquals(12L, root.stats().totalBytes)
+		assertEquals(2, provider.callCount(Operation.QUERY_CHILDREN))
+	}
+
+	@Test
+	fun failedListingIsNotMemoized() {
+		addTree()
+
+		provider.failNext(Operation.QUERY_CHILDREN)
+		val failed = root.stats()
+		assertFalse(failed.isComplete)
+		assertEquals(0L, failed.fileCount)
+
+		val stats = root.stats()
+		assertTrue(stats.isComplete)
+		assertEquals(2L, stats.fileCount)
+	}
+
+	@Test
+	fun statsShareTheirWorkerPool() {
+		repeat(4) { provider.addFile(provider.addDirectory(ROOT_DOCUMENT_ID, "folder$it"), "a.jpg") }
+		provider.resetCalls()
+		// Slow enough that the subdirectories are taken by workers rather than the calling thread
+		provider.setLatency(50, Operation.QUERY_CHILDREN)
+		val pools = Collections.newSetFromMap(IdentityHashMap<ForkJoinPool, Boolean>())
+		provider.fault = FakeDocumentsProvider.Fault { _, _ ->
+			ForkJoinTask.getPool()?.let { synchronized(pools) { pools.add(it) } }
+			null
+		}
+
+		root.stats()
+		DirectoryStatsCache.clear()
+		root.stats()
+		assertEquals(10, provider.callCount(Operation.QUERY_CHILDREN))
+		assertEquals(1, pools.size)
+	}
+
+	@Test
+	fun changeElsewhereKeepsStatsInProgress() {
+		val folder = addTree()
+		val other = provider.addDirectory(ROOT_DOCUMENT_ID, "other")
+		var changed = false
+		provider.fault = FakeDocumentsProvider.Fault { operation, documentId ->
+			if (operation == Operation.QUERY_CHILDREN && documentId == folder && !changed) {
+				changed = true
+				assertNotNull(file(other).createFile("image/jpeg", "new.jpg"))
+			}
+			null
+		}
+
+		assertEquals(1L, file(folder).stats().fileCount)
+		assertTrue(changed)
+		provider.fault = null
+		provider.resetCalls()
+		assertEquals(1L, file(folder).stats().fileCount)
+		assertEquals(0, provider.callCount(Operation.QUERY_CHILDREN))
+	}
+}
@@ -0,0 +1,87 @@
+package com.anthonymandra.framework
+
+import com.anthonymandra.framework.testing.FakeDocumentsProvider
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Companion.ROOT_DOCUMENT_ID
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Operation
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+
+class TransferTest : FakeProviderTest() {
+
+	@Test
+	fun moveCopiesThenDeletesTheSource() {
+		val source = provider.addFile(ROOT_DOCUMENT_ID, "a.jpg", "image/jpeg", byteArrayOf(1, 2, 3))
+		val target = provider.addDirectory(ROOT_DOCUMENT_ID, "target")
+
+		assertNotNull(DocumentTransfer(context).move(file(source), file(target)))
+		assertFalse(provider.exists(source))
+		assertArrayEquals(byteArrayOf(1, 2, 3), provider.readContent("$target/a.jpg"))
+	}
+
+	@Test
+	fun moveThatCantDeleteTheSourceRemovesTheCopy() {
+		val source = provider.addFile(ROOT_DOCUMENT_ID, "a.jpg", "image/jpeg", byteArrayOf(1, 2, 3))
+		val target = provider.addDirectory(ROOT_DOCUMENT_ID, "target")
+
+		// A missing document counts as deleted, so the provider refuses instead
+		provider.fault = FakeDocumentsProvider.Fault { operation, documentId ->
+			if (operation == Operation.DELETE && documentId == source) IllegalStateException("Refused") else null
+		}
+		assertNull(DocumentTransfer(context).move(file(source), file(target)))
+		assertTrue(provider.exists(source))
+		assertFalse(provider.exists("$target/a.jpg"))
+	}
+
+	@Test
+	fun sourceHandleIsLeftLive() {
+		val id = provider.addFile(ROOT_DOCUMENT_ID, "a.jpg", "image/jpeg", byteArrayOf(1, 2, 3))
+		val target = provider.addDirectory(ROOT_DOCUMENT_ID, "target")
+		val source = file(id)
+
+		assertNotNull(DocumentTransfer(context).copy(source, file(target)))
+		provider.setContent(id, byteArrayOf(1, 2, 3, 4))
+		assertEquals(4L, source.length)
+		provider.removeDocument(id)
+		assertFalse(source.exists())
+	}
+
+	@Test
+	fun unreadableSourceCreatesNoTarget() {
+		val source = provider.addFile(ROOT_DOCUMENT_ID, "a.jpg", "image/jpeg", byteArrayOf(1, 2, 3))
+		val target = provider.addDirectory(ROOT_DOCUMENT_ID, "target")
+		provider.resetCalls()
+
+		// Renamed, so the provider's own copy isn't tried
+		provider.failNext(Operation.OPEN)
+		assertNull(DocumentTransfer(context).copy(file(source), file(target), "b.jpg"))
+		assertEquals(0, provider.callCount(Operation.CREATE))
+		assertEquals(0, provider.callCount(Operation.DELETE))
+	}
+
+	@Test
+	fun directoryIsRejectedBeforeCreatingTheTarget() {
+		val source = provider.addDirectory(ROOT_DOCUMENT_ID, "folder")
+		provider.addFile(source, "a.jpg")
+		val target = provider.addDirectory(ROOT_DOCUMENT_ID, "target")
+		provider.resetCalls()
+
+		fun assertRejected(transfer: () -> Unit) {
+			try {
+				transfer()
+				fail("Transferred a directory")
+			} catch (e: IllegalArgumentException) {
+				// Expected
+			}
+		}
+		assertRejected { DocumentTransfer(context).copy(file(source), file(target)) }
+		assertRejected { DocumentTransfer(context).move(file(source), file(target)) }
+		assertEquals(0, provider.callCount(Operation.CREATE))
+		assertTrue(provider.exists("$source/a.jpg"))
+	}
+}
@@ -0,0 +1,92 @@
+package com.anthonymandra.framework
+
+import android.net.Uri
+import android.provider.DocumentsContract
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Companion.ROOT_DOCUMENT_ID
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Operation
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class TreeObserverTest : FakeProviderTest() {
+
+	private fun notifyChildren(documentId: String) {
+		context.contentResolver.notifyChange(DocumentsContract.buildChildDocumentsUri(AUTHORITY, documentId), null, false)
+	}
+
+	@Test
+	fun changedDirectoryIsListedAgainAndItsSiblingIsNot() {
+		val a = provider.addDirectory(ROOT_DOCUMENT_ID, "a")
+		val b = provider.addDirectory(ROOT_DOCUMENT_ID, "b")
+		provider.addFile(b, "kept")
+		assertNull(file(a).findFile("new"))
+		assertNotNull(file(b).findFile("kept"))
+
+		val changes = ArrayList<Uri?>()
+		root.watch { changes.add(it) }.use {
+			provider.addFile(a, "new")
+			notifyChildren(a)
+			provider.resetCalls()
+
+			assertNotNull(file(a).findFile("new"))
+			assertNotNull(file(b).findFile("kept"))
+			assertEquals(1, provider.callCount(Operation.QUERY_CHILDREN))
+		}
+		assertEquals(listOf(provider.documentUri(a)), changes)
+	}
+
+	@Test
+	fun removedDirectoryIsForgotten() {
+		val a = provider.addDirectory(ROOT_DOCUMENT_ID, "a")
+		assertNotNull(root.createPath("a/b/new.jpg", "image/jpeg"))
+
+		root.watch().use {
+			provider.removeDocument(a)
+			notifyChildren(ROOT_DOCUMENT_ID)
+			provider.resetCalls()
+
+			// Without the notification the known directories would skip straight to the create
+			assertNotNull(root.createPath("a/b/other.jpg", "image/jpeg"))
+			assertEquals(3, provider.callCount(Operation.CREATE))
+		}
+	}
+
+	@Test
+	fun changeOutsideOfTheTreeIsIgnored() {
+		val b = provider.addDirectory(provider.addDirectory(ROOT_DOCUMENT_ID, "a"), "b")
+		val c = provider.addDirectory(ROOT_DOCUMENT_ID, "c")
+		val tree = UsefulDocumentFile.fromUri(context, provider.treeUri(b))
+		val changes = ArrayList<Uri?>()
+
+		// 'fake:a/b' is a path, so the tree's ids are read as paths
+		tree.watch { changes.add(it) }.use {
+			assertNull(tree.findFile("missing"))
+			notifyChildren(c)
+			provider.resetCalls()
+
+			assertNull(tree.findFile("missing"))
+			assertEquals(0, provider.queryCount)
+		}
+		assertEquals(emptyList<Uri?>(), changes)
+	}
+
+	@Test
+	fun opaqueIdsInvalidateTheWholeTree() {
+		val a = provider.addDirectory(ROOT_DOCUMENT_ID, "a")
+		provider.addFile(a, "kept")
+		val tree = UsefulDocumentFile.fromUri(context, provider.treeUri(a))
+		val changes = ArrayList<Uri?>()
+
+		// Nothing marks 'fake:a' as a path, so any change to the authority may be within it
+		tree.watch { changes.add(it) }.use {
+			assertNotNull(tree.findFile("kept"))
+			notifyChildren("elsewhere")
+			provider.resetCalls()
+
+			assertNotNull(tree.findFile("kept"))
+			assertEquals(1, provider.callCount(Operation.QUERY_CHILDREN))
+		}
+		assertEquals(listOf<Uri?>(null), changes)
+	}
+}
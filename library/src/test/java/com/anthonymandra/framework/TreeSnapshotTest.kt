@@ -0,0 +1,209 @@
+package com.anthonymandra.framework
+
+import android.os.CancellationSignal
+import android.os.OperationCanceledException
+import android.provider.DocumentsContract
+import com.anthonymandra.framework.testing.FakeDocumentsProvider
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Companion.ROOT_DOCUMENT_ID
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Operation
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import java.io.File
+import java.io.FileNotFoundException
+import java.io.IOException
+import java.io.RandomAccessFile
+
+class TreeSnapshotTest : FakeProviderTest() {
+
+	private val snapshotFile get() = File(context.cacheDir, "snapshot")
+
+	private fun capture(signal: CancellationSignal? = null) = TreeSnapshot.capture(context, root, snapshotFile, signal)
+
+	private fun assertRejected(file: File) {
+		try {
+			TreeSnapshot.open(file).close()
+			fail("Opened ${file.length()} bytes")
+		} catch (e: IOException) {
+			// Expected
+		}
+	}
+
+	@Test
+	fun reopenedSnapshotMatchesTheCapture() {
+		val folder = provider.addDirectory(ROOT_DOCUMENT_ID, "folder")
+		val photo = provider.addFile(folder, "a.jpg", "image/jpeg", ByteArray(3), 1_600_000_000_000L)
+		provider.addFile(ROOT_DOCUMENT_ID, "b.txt", "text/plain", ByteArray(5), 1_600_000_001_000L)
+
+		val captured = capture()
+		val expected = (0 until captured.count).map {
+			listOf(captured.documentId(it), captured.name(it), captured.parent(it), captured.flags(it),
+				captured.mimeType(it), captured.size(it), captured.lastModified(it), captured.childCount(it))
+		}
+		val capturedAt = captured.capturedAt
+		captured.close()
+
+		TreeSnapshot.open(snapshotFile).use { snapshot ->
+			assertEquals(4, snapshot.count)
+			assertEquals(provider.treeUri(), snapshot.treeUri)
+			assertEquals(capturedAt, snapshot.capturedAt)
+			assertEquals(expected, (0 until snapshot.count).map {
+				listOf(snapshot.documentId(it), snapshot.name(it), snapshot.parent(it), snapshot.flags(it),
+					snapshot.mimeType(it), snapshot.size(it), snapshot.lastModified(it), snapshot.childCount(it))
+			})
+
+			assertEquals(ROOT_DOCUMENT_ID, snapshot.documentId(0))
+			assertEquals(-1, snapshot.parent(0))
+			val index = snapshot.find(snapshot.find(0, folder), photo)
+			assertEquals("a.jpg", snapshot.name(index))
+			assertEquals("image/jpeg", snapshot.mimeType(index))
+			assertEquals(3L, snapshot.size(index))
+			assertEquals(1_600_000_000_000L, snapshot.lastModified(index))
+			assertEquals(provider.documentUri(photo), snapshot.uri(index))
+		}
+	}
+
+	@Test
+	fun childrenAreContiguousAndSortedById() {
+		// Inserted out of order, the provider lists children as inserted
+		val b = provider.addDirectory(ROOT_DOCUMENT_ID, "b")
+		provider.addFile(b, "2")
+		provider.addFile(b, "1")
+		provider.addDirectory(ROOT_DOCUMENT_ID, "a")
+		provider.addFile(ROOT_DOCUMENT_ID, "c")
+
+		capture().use { snapshot ->
+			val seen = BooleanArray(snapshot.count)
+			seen[0] = true
+			for (parent in 0 until snapshot.count) {
+				val children = snapshot.children(parent)
+				assertEquals(maxOf(snapshot.childCount(parent), 0), children.count())
+				val ids = children.map { snapshot.documentId(it) }
+				assertEquals(ids.sorted(), ids)
+				for (child in children) {
+					assertEquals(parent, snapshot.parent(child))
+					assertFalse("Listed twice: $child", seen[child])
+					seen[child] = true
+				}
+			}
+			assertTrue(seen.all { it })
+			assertEquals(listOf("fake:a", "fake:b", "fake:c"), snapshot.children(0).map { snapshot.documentId(it) })
+		}
+	}
+
+	@Test
+	fun findSearchesTheChildrenOfOneDirectory() {
+		addPhotos(50)
+		val empty = provider.addDirectory(ROOT_DOCUMENT_ID, "empty")
+
+		capture().use { snapshot ->
+			for (i in 0 until 50) {
+				val index = snapshot.find(0, "fake:IMG_$i.jpg")
+				assertEquals("IMG_$i.jpg", snapshot.name(index))
+			}
+			assertEquals(-1, snapshot.find(0, "fake:IMG_50.jpg"))
+			assertEquals(-1, snapshot.find(0, "fake:"))
+			assertEquals(-1, snapshot.find(0, "fake:zzz"))
+
+			val emptyIndex = snapshot.find(0, empty)
+			assertTrue(snapshot.isListed(emptyIndex))
+			assertEquals(0, snapshot.childCount(emptyIndex))
+			assertEquals(-1, snapshot.find(emptyIndex, "fake:IMG_0.jpg"))
+		}
+	}
+
+	@Test
+	fun mimeTypesAreStoredOnce() {
+		addPhotos(3)
+		provider.addFile(ROOT_DOCUMENT_ID, "notes.txt", "text/plain")
+		provider.addDirectory(ROOT_DOCUMENT_ID, "folder")
+
+		capture().close()
+		TreeSnapshot.open(snapshotFile).use { snapshot ->
+			val photos = (0 until 3).map { snapshot.find(0, "fake:IMG_$it.jpg") }
+			assertEquals("image/jpeg", snapshot.mimeType(photos[0]))
+			assertSame(snapshot.mimeType(photos[0]), snapshot.mimeType(photos[1]))
+			assertSame(snapshot.mimeType(photos[0]), snapshot.mimeType(photos[2]))
+			assertEquals("text/plain", snapshot.mimeType(snapshot.find(0, "fake:notes.txt")))
+
+			val folder = snapshot.find(0, "fake:folder")
+			assertEquals(DocumentsContract.Document.MIME_TYPE_DIR, snapshot.mimeType(folder))
+			assertTrue(snapshot.isDirectory(folder))
+			assertSame(snapshot.mimeType(0), snapshot.mimeType(folder))
+		}
+	}
+
+	@Test
+	fun incompleteOrForeignFilesAreRejected() {
+		addPhotos(3)
+		capture().close()
+		val length = snapshotFile.length()
+
+		// Cut short, as by a crash before the trailer was written
+		RandomAccessFile(snapshotFile, "rw").use { it.setLength(length - 1) }
+		assertRejected(snapshotFile)
+
+		snapshotFile.writeBytes(ByteArray(length.toInt()) { it.toByte() })
+		assertRejected(snapshotFile)
+
+		snapshotFile.writeBytes(ByteArray(0))
+		assertRejected(snapshotFile)
+
+		assertTrue(snapshotFile.delete())
+		assertRejected(snapshotFile)
+	}
+
+	@Test
+	fun cancelledCaptureKeepsThePreviousSnapshot() {
+		val folder = provider.addDirectory(ROOT_DOCUMENT_ID, "folder")
+		provider.addFile(folder, "a")
+		capture().close()
+		val previous = snapshotFile.readBytes()
+
+		provider.addFile(folder, "b")
+		val signal = CancellationSignal()
+		provider.fault = FakeDocumentsProvider.Fault { operation, documentId ->
+			if (operation == Operation.QUERY_CHILDREN && documentId == folder)
+				signal.cancel()
+			null
+		}
+		try {
+			capture(signal).close()
+			fail("Capture wasn't cancelled")
+		} catch (e: OperationCanceledException) {
+			// Expected
+		}
+
+		assertTrue(previous.contentEquals(snapshotFile.readBytes()))
+		assertFalse(File(snapshotFile.path + ".tmp").exists())
+		TreeSnapshot.open(snapshotFile).use { snapshot ->
+			assertEquals(3, snapshot.count)
+		}
+	}
+
+	@Test
+	fun failedListingIsNotStoredAsEmpty() {
+		val folder = provider.addDirectory(ROOT_DOCUMENT_ID, "folder")
+		provider.addFile(folder, "a")
+		val empty = provider.addDirectory(ROOT_DOCUMENT_ID, "empty")
+		provider.fault = FakeDocumentsProvider.Fault { operation, documentId ->
+			if (operation == Operation.QUERY_CHILDREN && documentId == folder) FileNotFoundException() else null
+		}
+
+		capture().use { snapshot ->
+			val failed = snapshot.find(0, folder)
+			assertFalse(snapshot.isListed(failed))
+			assertEquals(TreeSnapshot.NOT_LISTED, snapshot.childCount(failed))
+			assertTrue(snapshot.children(failed).isEmpty())
+			assertEquals(-1, snapshot.find(failed, "$folder/a"))
+
+			val emptyIndex = snapshot.find(0, empty)
+			assertTrue(snapshot.isListed(emptyIndex))
+			assertNotEquals(snapshot.childCount(failed), snapshot.childCount(emptyIndex))
+		}
+	}
+}
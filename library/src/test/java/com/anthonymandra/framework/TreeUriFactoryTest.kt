@@ -0,0 +1,82 @@
+package com.anthonymandra.framework
+
+import android.net.Uri
+import android.provider.DocumentsContract
+import org.junit.Assert.assertEquals
+import org.junit.Assert.fail
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class TreeUriFactoryTest {
+
+	private val trees = listOf("primary:", "primary:My Folder", "0000-0000:a:b/Фото")
+	private val ids = listOf(
+		"primary:",
+		"primary:DCIM",
+		"primary:DCIM/Camera/IMG 0001.jpg",
+		"0000-0000:a:b/c:d",
+		"primary:Фото/日本 写真.jpg",
+		"primary:a%2Fb+c&d=e#f?g",
+		"opaque id")
+
+	@Test
+	fun documentUrisEqualThoseOfDocumentsContract() {
+		for (treeId in trees) {
+			val treeUri = DocumentsContract.buildTreeDocumentUri(AUTHORITY, treeId)
+			val factory = TreeUriFactory.forTree(treeUri)
+			assertEquals(treeId, factory.treeDocumentId)
+			for (id in ids) {
+				val expected = DocumentsContract.buildDocumentUriUsingTree(treeUri, id)
+				val actual = factory.buildDocumentUri(id)
+				assertEquals(expected, actual)
+				assertEquals(expected.toString(), actual.toString())
+				assertEquals(id, DocumentsContract.getDocumentId(actual))
+				assertEquals(treeId, DocumentsContract.getTreeDocumentId(actual))
+			}
+		}
+	}
+
+	@Test
+	fun documentUriWithinTheTreeGivesTheSameTree() {
+		val treeUri = DocumentsContract.buildTreeDocumentUri(AUTHORITY, "primary:My Folder")
+		val documentUri = DocumentsContract.buildDocumentUriUsingTree(treeUri, "primary:My Folder/a b")
+
+		val factory = TreeUriFactory.forTree(documentUri)
+		assertEquals("primary:My Folder", factory.treeDocumentId)
+		assertEquals(DocumentsContract.buildDocumentUriUsingTree(treeUri, "primary:c"), factory.buildDocumentUri("primary:c"))
+	}
+
+	@Test
+	fun alternatingTreesKeepTheirOwnPrefix() {
+		val first = DocumentsContract.buildTreeDocumentUri(AUTHORITY, "primary:a")
+		val second = DocumentsContract.buildTreeDocumentUri("$AUTHORITY.other", "primary:a")
+		repeat(2) {
+			assertEquals(DocumentsContract.buildDocumentUriUsingTree(first, "primary:a/x"),
+				TreeUriFactory.forTree(first).buildDocumentUri("primary:a/x"))
+			assertEquals(DocumentsContract.buildDocumentUriUsingTree(second, "primary:a/x"),
+				TreeUriFactory.forTree(second).buildDocumentUri("primary:a/x"))
+		}
+	}
+
+	@Test
+	fun uriWithoutATreeIsRejected() {
+		try {
+			TreeUriFactory.forTree(DocumentsContract.buildDocumentUri(AUTHORITY, "primary:a"))
+			fail("Built a factory without a tree")
+		} catch (e: IllegalArgumentException) {
+			// Expected
+		}
+		try {
+			TreeUriFactory.forTree(Uri.parse("file:///sdcard/a"))
+			fail("Built a factory without a tree")
+		} catch (e: IllegalArgumentException) {
+			// Expected
+		}
+	}
+
+	companion object {
+		private const val AUTHORITY = "com.android.externalstorage.documents"
+	}
+}
@@ -0,0 +1,81 @@
+package com.anthonymandra.framework
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+
+class UtilTest {
+
+	private val content = ByteArray(200_000) { it.toByte() }
+
+	@Test
+	fun releasedBufferIsReused() {
+		val buffer = Util.acquireCopyBuffer()
+		Util.releaseCopyBuffer(buffer)
+		assertSame(buffer, Util.acquireCopyBuffer())
+		Util.releaseCopyBuffer(buffer)
+	}
+
+	@Test
+	fun nestedCopyGetsItsOwnBuffer() {
+		val outer = Util.acquireCopyBuffer()
+		val inner = Util.acquireCopyBuffer()
+		assertNotSame(outer, inner)
+		Util.releaseCopyBuffer(inner)
+		Util.releaseCopyBuffer(outer)
+	}
+
+	@Test
+	fun bufferSizeReplacesBuffersOfTheOldSize() {
+		val previous = Util.getCopyBufferSize()
+		try {
+			Util.releaseCopyBuffer(Util.acquireCopyBuffer())
+			Util.setCopyBufferSize(1024)
+			assertEquals(1024, Util.acquireCopyBuffer().size)
+
+			val output = ByteArrayOutputStream()
+			assertEquals(content.size.toLong(), Util.copyLarge(ByteArrayInputStream(content), output))
+			assertArrayEquals(content, output.toByteArray())
+		} finally {
+			Util.setCopyBufferSize(previous)
+		}
+	}
+
+	@Test(expected = IllegalArgumentException::class)
+	fun bufferSizeMustBePositive() {
+		Util.setCopyBufferSize(0)
+	}
+
+	@Test
+	fun copyStatsCountBytesAndCalls() {
+		val stats = CopyStats()
+		repeat(3) { Util.copyLarge(ByteArrayInputStream(content), ByteArrayOutputStream(), stats) }
+		assertEquals(3L * content.size, stats.bytes)
+		assertEquals(3L, stats.calls)
+
+		stats.reset()
+		assertEquals(0L, stats.bytes)
+		assertEquals(0L, stats.calls)
+		assertEquals(0L, stats.elapsedNanos)
+		assertEquals(0.0, stats.bytesPerSecond, 0.0)
+	}
+
+	@Test
+	fun copyStatsRatesArePerSecond() {
+		val stats = CopyStats()
+		stats.record(3000, 500_000_000)
+		stats.record(1000, 500_000_000)
+		assertEquals(4000.0, stats.bytesPerSecond, 0.001)
+		assertEquals(2.0, stats.callsPerSecond, 0.001)
+	}
+
+	@Test
+	fun sizeHintNeedNotBeExact() {
+		for (hint in listOf(-1L, 0L, 1000L, content.size.toLong(), content.size + 1000L))
+			assertArrayEquals("hint $hint", content, Util.toByteArray(ByteArrayInputStream(content), hint))
+	}
+}
@@ -0,0 +1,50 @@
+package com.anthonymandra.framework
+
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Companion.ROOT_DOCUMENT_ID
+import com.anthonymandra.framework.testing.FakeDocumentsProvider.Operation
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class WalkerTest : FakeProviderTest() {
+
+	@Test
+	fun depthFirstVisitsEachDirectoryBeforeItsNextSibling() {
+		val expected = ArrayList<String>()
+		for (i in 0 until 10) {
+			val directory = provider.addDirectory(ROOT_DOCUMENT_ID, "dir_$i")
+			expected.add("dir_$i")
+			for (j in 0 until 3) {
+				provider.addFile(directory, "file_${i}_$j")
+				expected.add("file_${i}_$j")
+			}
+		}
+		provider.resetCalls()
+
+		val visited = ArrayList<String>()
+		DocumentWalker(parallelism = 2).walk(root) { file, _ -> visited.add(file.name) }
+		assertEquals(expected, visited)
+		assertEquals(11, provider.callCount(Operation.QUERY_CHILDREN))
+	}
+
+	@Test
+	fun breadthFirstListsAtMostParallelismDirectoriesAtOnce() {
+		val expected = ArrayList<String>()
+		val nested = ArrayList<String>()
+		for (i in 0 until 10) {
+			val directory = provider.addDirectory(ROOT_DOCUMENT_ID, "dir_$i")
+			expected.add("dir_$i")
+			provider.addFile(directory, "file_$i")
+			nested.add("file_$i")
+		}
+		expected.addAll(nested)
+		provider.setLatency(20, Operation.QUERY_CHILDREN)
+		provider.resetCalls()
+
+		val visited = ArrayList<String>()
+		DocumentWalker(DocumentWalker.Order.BREADTH_FIRST, parallelism = 3).walk(root) { file, _ -> visited.add(file.name) }
+		assertEquals(expected, visited)
+		assertEquals(11, provider.callCount(Operation.QUERY_CHILDREN))
+		assertTrue(provider.peakConcurrency(Operation.QUERY_CHILDREN) in 2..3)
+	}
+}
@@ -0,0 +1,610 @@
+package com.anthonymandra.framework.testing
+
+import android.annotation.TargetApi
+import android.content.ContentResolver
+import android.content.Context
+import android.content.pm.ProviderInfo
+import android.database.Cursor
+import android.database.MatrixCursor
+import android.net.Uri
+import android.os.Build
+import android.os.Bundle
+import android.os.CancellationSignal
+import android.os.ParcelFileDescriptor
+import android.provider.DocumentsContract
+import android.provider.DocumentsContract.Document
+import android.provider.DocumentsContract.Root
+import android.provider.DocumentsProvider
+import java.io.File
+import java.io.FileNotFoundException
+import java.util.EnumMap
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * A [DocumentsProvider] modelling a single hierarchical tree in memory, for exercising the
+ * library against a real provider without a device's storage.  Document ids follow the
+ * 'root:path/name' scheme of ExternalStorageProvider, so the library's id parsing applies.
+ * File contents are kept in the cache directory so descriptors are seekable.
+ *
+ * Every call is recorded, so tests can assert query budgets:
+ *
+ * ```
+ * val provider = FakeDocumentsProvider.forAuthority(authority)
+ * provider.assertQueries(2) {
+ *     directory.listFiles().forEach { it.name; it.length }
+ * }
+ * ```
+ *
+ * Latency and failures can be injected per [Operation] to approximate binder and storage costs.
+ * Latency is real time, so concurrent callers overlap and [peakConcurrency] reflects them.
+ *
+ * For test use only.  Like any [DocumentsProvider] it must be exported, so this module does
+ * not merge it into the consuming app.  Declare it in the manifest of the test or debug build
+ * that needs it, at the authority given by [authorityFor]:
+ *
+ * ```
+ * <provider
+ *     android:name="com.anthonymandra.framework.testing.FakeDocumentsProvider"
+ *     android:authorities="${'$'}{applicationId}.fakedocuments"
+ *     android:exported="true"
+ *     android:grantUriPermissions="true"
+ *     android:permission="android.permission.MANAGE_DOCUMENTS" />
+ * ```
+ *
+ * or register it by hand with [providerInfo], such as with Robolectric:
+ *
+ * ```
+ * Robolectric.buildContentProvider(FakeDocumentsProvider::class.java)
+ *     .create(FakeDocumentsProvider.providerInfo(authority))
+ * ```
+ */
+class FakeDocumentsProvider : DocumentsProvider() {
+
+	enum class Operation {
+		QUERY_ROOTS,
+		QUERY_DOCUMENT,
+		QUERY_CHILDREN,
+		OPEN,
+		CREATE,
+		DELETE,
+		RENAME;
+
+		val isQuery: Boolean
+			get() = this == QUERY_ROOTS || this == QUERY_DOCUMENT || this == QUERY_CHILDREN
+	}
+
+	fun interface Fault {
+		/**
+		 * @return an exception to throw from the call, or null to let it proceed
+		 */
+		fun onCall(operation: Operation, documentId: String?): Exception?
+	}
+
+	/**
+	 * A recorded provider call
+	 *
+	 * @param projection requested columns, null for the default projection or non-queries
+	 */
+	data class Call(val operation: Operation, val documentId: String?, val projection: List<String>?)
+
+	private class Node(
+		var documentId: String,
+		var parentId: String?,
+		var name: String,
+		val mimeType: String,
+		var lastModified: Long,
+		/** Contents of a file, null for a directory */
+		val file: File?) {
+
+		val children = LinkedHashSet<String>()
+		val isDirectory get() = file == null
+	}
+
+	private val lock = Any()
+	private val documents = HashMap<String, Node>()
+	private val calls = ArrayList<Call>()
+	private val latency = EnumMap<Operation, Long>(Operation::class.java)
+	private val pendingFailures = EnumMap<Operation, Int>(Operation::class.java)
+	private val inFlight = EnumMap<Operation, Int>(Operation::class.java)
+	private val peaks = EnumMap<Operation, Int>(Operation::class.java)
+	private var nextFile = 0
+	private lateinit var storage: File
+
+	/**
+	 * Consulted on every call after any latency, see [failNext] for the common case
+	 */
+	@Volatile var fault: Fault? = null
+
+	/**
+	 * Which of [ContentResolver.QUERY_ARG_OFFSET] and [ContentResolver.QUERY_ARG_LIMIT] children
+	 * queries honor.  None by default, as with most providers, so every child is returned.
+	 */
+	@Volatile var honoredPagingArgs: Set<String> = emptySet()
+
+	lateinit var authority: String
+		private set
+
+	override fun attachInfo(context: Context, info: ProviderInfo) {
+		super.attachInfo(context, info)
+		authority = info.authority
+		instances[authority] = this
+	}
+
+	override fun onCreate(): Boolean {
+		storage = File(context!!.cacheDir, "fake-documents")
+		reset()
+		return true
+	}
+
+	/**
+	 * Empty the tree and forget recorded calls, concurrency peaks, latency and failures
+	 */
+	fun reset() {
+		synchronized(lock) {
+			documents.clear()
+			storage.deleteRecursively()
+			storage.mkdirs()
+			documents[ROOT_DOCUMENT_ID] = Node(ROOT_DOCUMENT_ID, null, ROOT_TITLE, Document.MIME_TYPE_DIR, System.currentTimeMillis(), null)
+			calls.clear()
+			peaks.clear()
+			latency.clear()
+			pendingFailures.clear()
+			fault = null
+			honoredPagingArgs = emptySet()
+		}
+	}
+
+	//-----------------------------------------------------------------------
+	// Tree setup and inspection
+	//-----------------------------------------------------------------------
+
+	/**
+	 * @return the id of the new directory
+	 */
+	fun addDirectory(parentId: String, name: String): String {
+		return synchronized(lock) { insert(parentId, name, Document.MIME_TYPE_DIR) }
+	}
+
+	/**
+	 * @return the id of the new file
+	 */
+	@JvmOverloads
+	fun addFile(parentId: String, name: String, mimeType: String = "application/octet-stream",
+				content: ByteArray = ByteArray(0), lastModified: Long = System.currentTimeMillis()): String {
+		return synchronized(lock) {
+			val id = insert(parentId, name, mimeType)
+			val file = documents[id]!!.file!!
+			file.writeBytes(content)
+			file.setLastModified(lastModified)
+			id
+		}
+	}
+
+	/**
+	 * Replace the contents of a file, as another app writing to it would
+	 */
+	@JvmOverloads
+	@Throws(FileNotFoundException::class)
+	fun setContent(documentId: String, content: ByteArray, lastModified: Long = System.currentTimeMillis()) {
+		synchronized(lock) {
+			val file = node(documentId).file ?: throw FileNotFoundException("Directory: $documentId")
+			file.writeBytes(content)
+			file.setLastModified(lastModified)
+		}
+	}
+
+	@Throws(FileNotFoundException::class)
+	fun setLastModified(documentId: String, lastModified: Long) {
+		synchronized(lock) {
+			val node = node(documentId)
+			node.lastModified = lastModified
+			node.file?.setLastModified(lastModified)
+		}
+	}
+
+	/**
+	 * Remove a document and its descendants as another app would, without recording a call or
+	 * notifying observers
+	 */
+	@Throws(FileNotFoundException::class)
+	fun removeDocument(documentId: String) {
+		synchronized(lock) {
+			val node = node(documentId)
+			node.parentId?.let { documents[it]?.children?.remove(documentId) }
+			remove(node)
+		}
+	}
+
+	fun exists(documentId: String) = synchronized(lock) { documents.containsKey(documentId) }
+
+	@Throws(FileNotFoundException::class)
+	fun readContent(documentId: String): ByteArray {
+		val file = synchronized(lock) { node(documentId).file } ?: throw FileNotFoundException("Directory: $documentId")
+		return file.readBytes()
+	}
+
+	/**
+	 * @return the tree uri of `documentId`, as a user would grant through ACTION_OPEN_DOCUMENT_TREE
+	 */
+	@JvmOverloads
+	fun treeUri(documentId: String = ROOT_DOCUMENT_ID): Uri = DocumentsContract.buildTreeDocumentUri(authority, documentId)
+
+	/**
+	 * @return the uri of `documentId` within the tree of the root
+	 */
+	fun documentUri(documentId: String): Uri = DocumentsContract.buildDocumentUriUsingTree(treeUri(), documentId)
+
+	//-----------------------------------------------------------------------
+	// Latency and failure injection
+	//-----------------------------------------------------------------------
+
+	/**
+	 * Delay every call of `operation`, or of every operation if null
+	 */
+	@JvmOverloads
+	fun setLatency(millis: Long, operation: Operation? = null) {
+		synchronized(lock) {
+			if (operation != null)
+				latency[operation] = millis
+			else
+				Operation.values().forEach { latency[it] = millis }
+		}
+	}
+
+	/**
+	 * Fail the next `count` calls of `operation`, with a [FileNotFoundException] as a missing or
+	 * inaccessible document would
+	 */
+	@JvmOverloads
+	fun failNext(operation: Operation, count: Int = 1) {
+		synchronized(lock) { pendingFailures[operation] = count }
+	}
+
+	//-----------------------------------------------------------------------
+	// Call accounting
+	//-----------------------------------------------------------------------
+
+	val recordedCalls: List<Call>
+		get() = synchronized(lock) { ArrayList(calls) }
+
+	/**
+	 * @param operation operation to count, or null for all
+	 * @param documentId document to count, or null for all
+	 */
+	@JvmOverloads
+	fun callCount(operation: Operation? = null, documentId: String? = null): Int {
+		return synchronized(lock) {
+			calls.count { (operation == null || it.operation == operation) && (documentId == null || it.documentId == documentId) }
+		}
+	}
+
+	/**
+	 * Number of root, document and children queries
+	 */
+	val queryCount: Int
+		get() = synchronized(lock) { calls.count { it.operation.isQuery } }
+
+	/**
+	 * @return query counts keyed by queried document
+	 */
+	fun queriesByDocument(): Map<String?, Int> {
+		return synchronized(lock) { calls.filter { it.operation.isQuery }.groupingBy { it.documentId }.eachCount() }
+	}
+
+	/**
+	 * @return query counts keyed by projection, null being the default projection
+	 */
+	fun queriesByProjection(): Map<List<String>?, Int> {
+		return synchronized(lock) { calls.filter { it.operation.isQuery }.groupingBy { it.projection }.eachCount() }
+	}
+
+	/**
+	 * @return the most calls of `operation` that were in progress at once
+	 */
+	fun peakConcurrency(operation: Operation): Int = synchronized(lock) { peaks[operation] ?: 0 }
+
+	fun resetCalls() {
+		synchronized(lock) {
+			calls.clear()
+			peaks.clear()
+		}
+	}
+
+	/**
+	 * Run `block` and fail if it made more than `max` queries
+	 *
+	 * @return the result of `block`
+	 * @throws AssertionError if the budget was exceeded, listing the queries made
+	 */
+	fun <T> assertQueries(max: Int, block: () -> T): T {
+		val start = synchronized(lock) { calls.size }
+		val result = block()
+		val queries = synchronized(lock) { calls.subList(start, calls.size).filter { it.operation.isQuery } }
+		if (queries.size > max)
+			throw AssertionError("Expected at most $max queries, made ${queries.size}:\n${queries.joinToString("\n")}")
+		return result
+	}
+
+	//-----------------------------------------------------------------------
+	// DocumentsProvider
+	//-----------------------------------------------------------------------
+
+	override fun queryRoots(projection: Array<String>?): Cursor = call(Operation.QUERY_ROOTS, null, projection) {
+		val cursor = MatrixCursor(projection ?: DEFAULT_ROOT_PROJECTION)
+		cursor.newRow()
+			.add(Root.COLUMN_ROOT_ID, ROOT_ID)
+			.add(Root.COLUMN_DOCUMENT_ID, ROOT_DOCUMENT_ID)
+			.add(Root.COLUMN_TITLE, ROOT_TITLE)
+			.add(Root.COLUMN_FLAGS, Root.FLAG_SUPPORTS_CREATE or Root.FLAG_SUPPORTS_IS_CHILD)
+		cursor
+	}
+
+	@Throws(FileNotFoundException::class)
+	override fun queryDocument(documentId: String, projection: Array<String>?): Cursor = call(Operation.QUERY_DOCUMENT, documentId, projection) {
+		val cursor = MatrixCursor(projection ?: DEFAULT_DOCUMENT_PROJECTION)
+		synchronized(lock) { includeDocument(cursor, node(documentId)) }
+		cursor
+	}
+
+	@Throws(FileNotFoundException::class)
+	override fun queryChildDocuments(parentDocumentId: String, projection: Array<String>?, sortOrder: String?): Cursor {
+		return queryChildren(parentDocumentId, projection, 0, Int.MAX_VALUE)
+	}
+
+	@TargetApi(Build.VERSION_CODES.O)
+	@Throws(FileNotFoundException::class)
+	override fun queryChildDocuments(parentDocumentId: String, projection: Array<String>?, queryArgs: Bundle?): Cursor {
+		val honored = honoredPagingArgs.filter { queryArgs?.containsKey(it) == true }
+		if (honored.isEmpty())
+			return queryChildDocuments(parentDocumentId, projection, null as String?)
+
+		val offset = if (ContentResolver.QUERY_ARG_OFFSET in honored) queryArgs!!.getInt(ContentResolver.QUERY_ARG_OFFSET) else 0
+		val limit = if (ContentResolver.QUERY_ARG_LIMIT in honored) queryArgs!!.getInt(ContentResolver.QUERY_ARG_LIMIT) else Int.MAX_VALUE
+		return queryChildren(parentDocumentId, projection, offset, limit).apply {
+			extras = Bundle().apply { putStringArray(ContentResolver.EXTRA_HONORED_ARGS, honored.toTypedArray()) }
+		}
+	}
+
+	@Throws(FileNotFoundException::class)
+	override fun openDocument(documentId: String, mode: String, signal: CancellationSignal?): ParcelFileDescriptor = call(Operation.OPEN, documentId, null) {
+		val file = synchronized(lock) { node(documentId).file } ?: throw FileNotFoundException("Directory: $documentId")
+		ParcelFileDescriptor.open(file, ParcelFileDescriptor.parseMode(mode))
+	}
+
+	@Throws(FileNotFoundException::class)
+	override fun createDocument(parentDocumentId: String, mimeType: String, displayName: String): String = call(Operation.CREATE, parentDocumentId, null) {
+		val id = synchronized(lock) { insert(parentDocumentId, displayName, mimeType) }
+		notifyChildren(parentDocumentId)
+		id
+	}
+
+	@Throws(FileNotFoundException::class)
+	override fun deleteDocument(documentId: String) {
+		call<Unit>(Operation.DELETE, documentId, null) {
+			val parentId = synchronized(lock) {
+				val node = node(documentId)
+				node.parentId?.let { documents[it]?.children?.remove(documentId) }
+				remove(node)
+				node.parentId
+			}
+			if (parentId != null)
+				notifyChildren(parentId)
+		}
+	}
+
+	@Throws(FileNotFoundException::class)
+	override fun renameDocument(documentId: String, displayName: String): String? = call(Operation.RENAME, documentId, null) {
+		val (parentId, renamedId) = synchronized(lock) {
+			val node = node(documentId)
+			val parentId = node.parentId ?: throw FileNotFoundException("Cannot rename the root")
+			val parent = documents[parentId]!!
+			val name = uniqueName(parent, displayName, node.mimeType)
+			val renamedId = childId(parentId, name)
+			node.name = name
+			node.lastModified = System.currentTimeMillis()
+			parent.children.remove(documentId)
+			parent.children.add(renamedId)
+			rekey(node, renamedId)
+			parentId to renamedId
+		}
+		notifyChildren(parentId)
+		if (renamedId == documentId) null else renamedId
+	}
+
+	override fun isChildDocument(parentDocumentId: String, documentId: String): Boolean {
+		synchronized(lock) {
+			var current = documents[documentId]?.parentId
+			while (current != null) {
+				if (current == parentDocumentId)
+					return true
+				current = documents[current]?.parentId
+			}
+			return false
+		}
+	}
+
+	//-----------------------------------------------------------------------
+	// Internals, callers hold the lock
+	//-----------------------------------------------------------------------
+
+	/**
+	 * Run `block` as a call of `operation`, counting it in progress until it returns
+	 */
+	@Throws(FileNotFoundException::class)
+	private inline fun <T> call(operation: Operation, documentId: String?, projection: Array<String>?, block: () -> T): T {
+		try {
+			enter(operation, documentId, projection)
+			return block()
+		} finally {
+			synchronized(lock) { inFlight[operation] = inFlight.getValue(operation) - 1 }
+		}
+	}
+
+	/**
+	 * Record the call, then apply any latency and injected failure outside of the lock
+	 */
+	@Throws(FileNotFoundException::class)
+	private fun enter(operation: Operation, documentId: String?, projection: Array<String>?) {
+		val (delay, fail) = synchronized(lock) {
+			calls.add(Call(operation, documentId, projection?.toList()))
+			val current = (inFlight[operation] ?: 0) + 1
+			inFlight[operation] = current
+			peaks[operation] = maxOf(current, peaks[operation] ?: 0)
+			val remaining = pendingFailures[operation] ?: 0
+			if (remaining > 0)
+				pendingFailures[operation] = remaining - 1
+			(latency[operation] ?: 0L) to (remaining > 0)
+		}
+		if (delay > 0) {
+			try {
+				Thread.sleep(delay)
+			} catch (e: InterruptedException) {
+				Thread.currentThread().interrupt()
+			}
+		}
+		if (fail)
+			throw FileNotFoundException("Injected failure: $operation $documentId")
+		fault?.onCall(operation, documentId)?.let { throw it }
+	}
+
+	@Throws(FileNotFoundException::class)
+	private fun queryChildren(parentId: String, projection: Array<String>?, offset: Int, limit: Int): MatrixCursor = call(Operation.QUERY_CHILDREN, parentId, projection) {
+		val cursor = MatrixCursor(projection ?: DEFAULT_DOCUMENT_PROJECTION)
+		synchronized(lock) {
+			for (child in node(parentId).children.asSequence().drop(offset).take(limit))
+				includeDocument(cursor, documents[child]!!)
+		}
+		cursor.setNotificationUri(context!!.contentResolver, DocumentsContract.buildChildDocumentsUri(authority, parentId))
+		cursor
+	}
+
+	@Throws(FileNotFoundException::class)
+	private fun node(documentId: String) = documents[documentId] ?: throw FileNotFoundException("Missing: $documentId")
+
+	@Throws(FileNotFoundException::class)
+	private fun insert(parentId: String, displayName: String, mimeType: String): String {
+		val parent = node(parentId)
+		if (!parent.isDirectory)
+			throw FileNotFoundException("Not a directory: $parentId")
+
+		val name = uniqueName(parent, displayName, mimeType)
+		val id = childId(parentId, name)
+		val file = if (Document.MIME_TYPE_DIR == mimeType) null else File(storage, (nextFile++).toString()).apply { createNewFile() }
+		documents[id] = Node(id, parentId, name, mimeType, System.currentTimeMillis(), file)
+		parent.children.add(id)
+		parent.lastModified = System.currentTimeMillis()
+		return id
+	}
+
+	private fun remove(node: Node) {
+		for (child in node.children)
+			documents[child]?.let { remove(it) }
+		node.file?.delete()
+		documents.remove(node.documentId)
+	}
+
+	/**
+	 * Move `node` and its descendants to ids beneath `documentId`
+	 */
+	private fun rekey(node: Node, documentId: String) {
+		documents.remove(node.documentId)
+		node.documentId = documentId
+		documents[documentId] = node
+
+		val children = node.children.toList()
+		node.children.clear()
+		for (id in children) {
+			val child = documents[id] ?: continue
+			child.parentId = documentId
+			val renamed = childId(documentId, child.name)
+			node.children.add(renamed)
+			rekey(child, renamed)
+		}
+	}
+
+	/**
+	 * Append ' (n)' to names that are taken, before the extension of files, as providers do
+	 */
+	private fun uniqueName(parent: Node, displayName: String, mimeType: String): String {
+		val taken = parent.children.mapNotNullTo(HashSet()) { documents[it]?.name }
+		if (displayName !in taken)
+			return displayName
+
+		val dot = if (Document.MIME_TYPE_DIR == mimeType) -1 else displayName.lastIndexOf('.')
+		val base = if (dot > 0) displayName.substring(0, dot) else displayName
+		val extension = if (dot > 0) displayName.substring(dot) else ""
+		var n = 1
+		while ("$base ($n)$extension" in taken)
+			n++
+		return "$base ($n)$extension"
+	}
+
+	private fun includeDocument(cursor: MatrixCursor, node: Node) {
+		val flags = if (node.isDirectory)
+			Document.FLAG_DIR_SUPPORTS_CREATE or Document.FLAG_SUPPORTS_DELETE or Document.FLAG_SUPPORTS_RENAME
+		else
+			Document.FLAG_SUPPORTS_WRITE or Document.FLAG_SUPPORTS_DELETE or Document.FLAG_SUPPORTS_RENAME
+
+		cursor.newRow()
+			.add(Document.COLUMN_DOCUMENT_ID, node.documentId)
+			.add(Document.COLUMN_DISPLAY_NAME, node.name)
+			.add(Document.COLUMN_MIME_TYPE, node.mimeType)
+			.add(Document.COLUMN_SIZE, node.file?.length())
+			.add(Document.COLUMN_LAST_MODIFIED, node.file?.lastModified() ?: node.lastModified)
+			.add(Document.COLUMN_FLAGS, flags)
+	}
+
+	private fun notifyChildren(parentId: String) {
+		context?.contentResolver?.notifyChange(DocumentsContract.buildChildDocumentsUri(authority, parentId), null, false)
+	}
+
+	companion object {
+		const val ROOT_ID = "fake"
+		const val ROOT_DOCUMENT_ID = "$ROOT_ID:"
+		private const val ROOT_TITLE = "Fake"
+		private const val AUTHORITY_SUFFIX = ".fakedocuments"
+
+		private val DEFAULT_ROOT_PROJECTION = arrayOf(
+			Root.COLUMN_ROOT_ID, Root.COLUMN_DOCUMENT_ID, Root.COLUMN_TITLE, Root.COLUMN_FLAGS)
+		private val DEFAULT_DOCUMENT_PROJECTION = arrayOf(
+			Document.COLUMN_DOCUMENT_ID, Document.COLUMN_DISPLAY_NAME, Document.COLUMN_MIME_TYPE,
+			Document.COLUMN_SIZE, Document.COLUMN_LAST_MODIFIED, Document.COLUMN_FLAGS)
+
+		private val instances = ConcurrentHashMap<String, FakeDocumentsProvider>()
+
+		/**
+		 * @return the authority to declare the provider at in the app of `context`
+		 */
+		@JvmStatic
+		fun authorityFor(context: Context) = context.packageName + AUTHORITY_SUFFIX
+
+		/**
+		 * @return provider info that satisfies [DocumentsProvider.attachInfo], for registering
+		 * the provider at `authority` without a manifest
+		 */
+		@JvmStatic
+		fun providerInfo(authority: String) = ProviderInfo().apply {
+			this.authority = authority
+			name = FakeDocumentsProvider::class.java.name
+			exported = true
+			grantUriPermissions = true
+			readPermission = android.Manifest.permission.MANAGE_DOCUMENTS
+			writePermission = android.Manifest.permission.MANAGE_DOCUMENTS
+		}
+
+		/**
+		 * @return the provider instance serving `authority` in this process
+		 * @throws IllegalStateException if the provider hasn't been created yet
+		 */
+		@JvmStatic
+		fun forAuthority(authority: String): FakeDocumentsProvider {
+			return instances[authority] ?: throw IllegalStateException("No provider attached for $authority")
+		}
+
+		/**
+		 * Child ids extend the parent's path, or follow the root separator directly
+		 */
+		private fun childId(parentId: String, name: String) =
+			if (parentId.endsWith(':')) parentId + name else "$parentId/$name"
+	}
+}